@@ -3,7 +3,6 @@ package atk.app.lifecycle;
 import java.io.Closeable;
 import java.util.concurrent.CompletableFuture;
 
-// TODO - All lifecycles should be concurrent state machines that returns completable feature for start() and stop()
 public interface Lifecycle<T> extends Closeable {
     CompletableFuture<T> start();
 
@@ -17,4 +16,11 @@ public interface Lifecycle<T> extends Closeable {
         stop();
     }
 
+    /**
+     * Returned future completes when lifecycle is closed, caller thread isn't blocked
+     */
+    default CompletableFuture<Void> closeAsync() {
+        return CompletableFuture.runAsync(this::close);
+    }
+
 }
@@ -0,0 +1,74 @@
+package atk.app.lifecycle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Starts and stops lifecycles in the order of their dependencies. A lifecycle is started after all its dependencies
+ * are started and stopped before them. Lifecycles that don't depend on each other are started and stopped concurrently.
+ * No thread waits for a lifecycle, the order is kept by composing their futures. No thread safe class
+ */
+public class LifecycleGraph {
+    // insertion order is a topological order, because dependencies are added before their dependents
+    private final Map<Lifecycle<?>, List<Lifecycle<?>>> dependencies = new LinkedHashMap<>();
+
+    /**
+     * @param dependencies - lifecycles that should be added to the graph before the lifecycle
+     */
+    public LifecycleGraph add(Lifecycle<?> lifecycle, Lifecycle<?>... dependencies) {
+        if (this.dependencies.containsKey(lifecycle)) {
+            throw new IllegalArgumentException(lifecycle + " is already added");
+        }
+        for (Lifecycle<?> dependency : dependencies) {
+            if (!this.dependencies.containsKey(dependency)) {
+                throw new IllegalArgumentException("Dependency " + dependency + " should be added before " + lifecycle);
+            }
+        }
+        this.dependencies.put(lifecycle, List.of(dependencies));
+        return this;
+    }
+
+    /**
+     * @return - future that completes when all lifecycles are started or fails if any of them fails to start.
+     * Dependents of a failed lifecycle aren't started
+     */
+    public CompletableFuture<Void> start() {
+        Map<Lifecycle<?>, CompletableFuture<?>> started = new HashMap<>();
+        dependencies.forEach((lifecycle, lifecycleDependencies) -> {
+            var dependenciesStarted = allOf(lifecycleDependencies.stream().map(started::get).toList());
+            started.put(lifecycle, dependenciesStarted.thenCompose(unused -> lifecycle.start()));
+        });
+        return allOf(started.values());
+    }
+
+    /**
+     * @return - future that completes when all lifecycles are stopped or fails if any of them fails to stop.
+     * A lifecycle is stopped even if its dependents fail to stop
+     */
+    public CompletableFuture<Void> stop() {
+        Map<Lifecycle<?>, CompletableFuture<?>> stopped = new HashMap<>();
+        var lifecycles = new ArrayList<>(dependencies.keySet());
+        for (int i = lifecycles.size() - 1; i >= 0; i--) {
+            var lifecycle = lifecycles.get(i);
+            var dependentsStopped = allOf(dependentsOf(lifecycle).stream().map(stopped::get).toList());
+            stopped.put(lifecycle, dependentsStopped.handle((unused, throwable) -> null).thenCompose(unused -> lifecycle.stop()));
+        }
+        return allOf(stopped.values());
+    }
+
+    private List<Lifecycle<?>> dependentsOf(Lifecycle<?> lifecycle) {
+        return dependencies.entrySet().stream()
+                .filter(entry -> entry.getValue().contains(lifecycle))
+                .<Lifecycle<?>>map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private static CompletableFuture<Void> allOf(Collection<CompletableFuture<?>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+}
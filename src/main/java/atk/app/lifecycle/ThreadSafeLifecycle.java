@@ -25,37 +25,63 @@ public abstract class ThreadSafeLifecycle implements Lifecycle<Void> {
     public final CompletableFuture<Void> start() {
         return CompletableFuture.supplyAsync(() -> {
             changeState(LifecycleStates.STARTED, Set.of(LifecycleStates.INITIAL, LifecycleStates.STOPPED));
-            start0();
-            return VOID;
-        }, lifecycleExecutor);
+            return startAsync0();
+        }, lifecycleExecutor).thenCompose(started -> started);
     }
 
     @Override
     public final CompletableFuture<Void> stop() {
         return CompletableFuture.supplyAsync(() -> {
             changeState(LifecycleStates.STOPPED, Set.of(LifecycleStates.STARTED));
-            stop0();
-            return VOID;
+            return stopAsync0();
+        }, lifecycleExecutor).thenCompose(stopped -> stopped);
+    }
+
+    @Override
+    public final CompletableFuture<Void> closeAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            synchronized (syncObject) {
+                return hasState(LifecycleStates.STOPPED) ? CompletableFuture.completedFuture(VOID) : stopAsync0();
+            }
+        }, lifecycleExecutor).thenCompose(stopped -> stopped).thenComposeAsync(unused -> {
+            changeState(LifecycleStates.CLOSED, Set.of(LifecycleStates.STARTED, LifecycleStates.STOPPED));
+            return closeAsync0();
         }, lifecycleExecutor);
     }
 
     @Override
     public final void close() {
         try {
-            CompletableFuture.supplyAsync(() -> {
-                synchronized (syncObject) {
-                    if (!hasState(LifecycleStates.STOPPED)) {
-                        stop0();
-                    }
-                }
-                changeState(LifecycleStates.CLOSED, Set.of(LifecycleStates.STARTED, LifecycleStates.STOPPED));
-                close0();
-                return VOID;
-            }, lifecycleExecutor).get();
+            closeAsync().get();
         } catch (InterruptedException | ExecutionException ignored) {
         }
     }
 
+    /**
+     * Runs on the lifecycle executor. It should be overridden by a lifecycle that waits for other lifecycles,
+     * so no thread is blocked while it waits
+     */
+    protected CompletableFuture<Void> startAsync0() {
+        start0();
+        return CompletableFuture.completedFuture(VOID);
+    }
+
+    /**
+     * Runs on the lifecycle executor
+     */
+    protected CompletableFuture<Void> stopAsync0() {
+        stop0();
+        return CompletableFuture.completedFuture(VOID);
+    }
+
+    /**
+     * Runs on the lifecycle executor
+     */
+    protected CompletableFuture<Void> closeAsync0() {
+        close0();
+        return CompletableFuture.completedFuture(VOID);
+    }
+
     protected abstract void start0();
 
     protected abstract void stop0();
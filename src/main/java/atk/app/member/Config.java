@@ -2,6 +2,8 @@ package atk.app.member;
 
 import java.net.SocketAddress;
 import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Supplier;
 
 public class Config {
 
@@ -18,18 +20,221 @@ public class Config {
     public final Duration suspectedMemberDeadline;
     public final Duration networkRequestMaximumDuration;
     public final int indirectPingTargets;
+    /**
+     * Duration for which a dead member is remembered. During this period gossip that tries to resurrect the member
+     * with an old incarnation is ignored. After it the member is forgotten
+     */
+    public final Duration deadMemberRetention;
+    /**
+     * Number of members that are notified when this member leaves the group
+     */
+    public final int leaveTargets;
+    /**
+     * Number of acks that a leaving member waits for (at most networkRequestMaximumDuration) before it stops
+     */
+    public final int leaveAcks;
+    /**
+     * Maximum number of member states in one chunk of a full state sync. It bounds memory used by a sync on both sides
+     */
+    public final int fullStateSyncChunkSize;
+    /**
+     * Number of threads that process received requests. They are separate from the transport I/O threads
+     */
+    public final int requestHandlerThreads;
+    /**
+     * Picks the next member to probe. Round-robin by default
+     */
+    public final ProbeTargetSelector.Factory probeTargetSelector;
+    /**
+     * Availability zone or rack of this member, null if it's unknown. Indirect pings prefer helpers in the zone
+     * of the probed member and spread the rest across zones
+     */
+    public final String zone;
+    /**
+     * Lower bound of a direct ping timeout. Timeout of every target adapts to its round trip times between this bound
+     * and networkRequestMaximumDuration
+     */
+    public final Duration minimumProbeTimeout;
+    /**
+     * Creates a policy that decides whether a member that didn't answer a probe is suspected. Binary by default
+     */
+    public final Supplier<SuspicionPolicy> suspicionPolicy;
+    /**
+     * Period of pushing recent member state changes to random members, independently of the probe period
+     */
+    public final Duration gossipInterval;
+    /**
+     * Number of random live members that receive gossip every gossip interval
+     */
+    public final int gossipFanout;
+    /**
+     * Maximum number of member states in one gossip message
+     */
+    public final int gossipMaximumUpdatesPerMessage;
+    /**
+     * Maximum estimated number of bytes per second sent by gossip
+     */
+    public final long gossipBandwidthBytesPerSecond;
 
+    /**
+     * Config with default values of everything except the probe timing
+     */
     public Config(MemberName memberName,
                   SocketAddress bindAddress,
                   Duration probePeriod,
                   Duration suspectedMemberDeadline,
                   Duration networkRequestMaximumDuration,
                   int indirectPingTargets) {
-        this.memberName = memberName;
-        this.bindAddress = bindAddress;
-        this.probePeriod = probePeriod;
-        this.suspectedMemberDeadline = suspectedMemberDeadline;
-        this.networkRequestMaximumDuration = networkRequestMaximumDuration;
-        this.indirectPingTargets = indirectPingTargets;
+        this(builder(memberName, bindAddress)
+                .probePeriod(probePeriod)
+                .suspectedMemberDeadline(suspectedMemberDeadline)
+                .networkRequestMaximumDuration(networkRequestMaximumDuration)
+                .indirectPingTargets(indirectPingTargets));
+    }
+
+    private Config(Builder builder) {
+        this.memberName = builder.memberName;
+        this.bindAddress = builder.bindAddress;
+        this.probePeriod = Objects.requireNonNull(builder.probePeriod, "probePeriod");
+        this.suspectedMemberDeadline = Objects.requireNonNull(builder.suspectedMemberDeadline, "suspectedMemberDeadline");
+        this.networkRequestMaximumDuration = Objects.requireNonNull(builder.networkRequestMaximumDuration, "networkRequestMaximumDuration");
+        this.indirectPingTargets = builder.indirectPingTargets;
+        this.deadMemberRetention = builder.deadMemberRetention;
+        this.leaveTargets = builder.leaveTargets;
+        this.leaveAcks = builder.leaveAcks;
+        this.fullStateSyncChunkSize = builder.fullStateSyncChunkSize;
+        this.requestHandlerThreads = builder.requestHandlerThreads;
+        this.probeTargetSelector = builder.probeTargetSelector;
+        this.zone = builder.zone;
+        this.minimumProbeTimeout = builder.minimumProbeTimeout;
+        this.suspicionPolicy = builder.suspicionPolicy;
+        this.gossipInterval = builder.gossipInterval;
+        this.gossipFanout = builder.gossipFanout;
+        this.gossipMaximumUpdatesPerMessage = builder.gossipMaximumUpdatesPerMessage;
+        this.gossipBandwidthBytesPerSecond = builder.gossipBandwidthBytesPerSecond;
+    }
+
+    /**
+     * Probe period, suspected member deadline and network request maximum duration have to be set, other values
+     * have defaults. Fields of {@link Config} describe every value
+     */
+    public static Builder builder(MemberName memberName, SocketAddress bindAddress) {
+        return new Builder(memberName, bindAddress);
+    }
+
+    public static class Builder {
+        private final MemberName memberName;
+        private final SocketAddress bindAddress;
+        private Duration probePeriod;
+        private Duration suspectedMemberDeadline;
+        private Duration networkRequestMaximumDuration;
+        private int indirectPingTargets = 3;
+        private Duration deadMemberRetention = MemberList.DEFAULT_TOMBSTONE_RETENTION;
+        private int leaveTargets = 3;
+        private int leaveAcks = 2;
+        private int fullStateSyncChunkSize = 256;
+        private int requestHandlerThreads = 1;
+        private ProbeTargetSelector.Factory probeTargetSelector = ProbeTargetSelector.roundRobin();
+        private String zone;
+        private Duration minimumProbeTimeout = Duration.ofMillis(100);
+        private Supplier<SuspicionPolicy> suspicionPolicy = SuspicionPolicy::binary;
+        private Duration gossipInterval = Duration.ofMillis(200);
+        private int gossipFanout = 3;
+        private int gossipMaximumUpdatesPerMessage = 32;
+        private long gossipBandwidthBytesPerSecond = 64 * 1024;
+
+        private Builder(MemberName memberName, SocketAddress bindAddress) {
+            this.memberName = memberName;
+            this.bindAddress = bindAddress;
+        }
+
+        public Builder probePeriod(Duration probePeriod) {
+            this.probePeriod = probePeriod;
+            return this;
+        }
+
+        public Builder suspectedMemberDeadline(Duration suspectedMemberDeadline) {
+            this.suspectedMemberDeadline = suspectedMemberDeadline;
+            return this;
+        }
+
+        public Builder networkRequestMaximumDuration(Duration networkRequestMaximumDuration) {
+            this.networkRequestMaximumDuration = networkRequestMaximumDuration;
+            return this;
+        }
+
+        public Builder indirectPingTargets(int indirectPingTargets) {
+            this.indirectPingTargets = indirectPingTargets;
+            return this;
+        }
+
+        public Builder deadMemberRetention(Duration deadMemberRetention) {
+            this.deadMemberRetention = deadMemberRetention;
+            return this;
+        }
+
+        public Builder leaveTargets(int leaveTargets) {
+            this.leaveTargets = leaveTargets;
+            return this;
+        }
+
+        public Builder leaveAcks(int leaveAcks) {
+            this.leaveAcks = leaveAcks;
+            return this;
+        }
+
+        public Builder fullStateSyncChunkSize(int fullStateSyncChunkSize) {
+            this.fullStateSyncChunkSize = fullStateSyncChunkSize;
+            return this;
+        }
+
+        public Builder requestHandlerThreads(int requestHandlerThreads) {
+            this.requestHandlerThreads = requestHandlerThreads;
+            return this;
+        }
+
+        public Builder probeTargetSelector(ProbeTargetSelector.Factory probeTargetSelector) {
+            this.probeTargetSelector = probeTargetSelector;
+            return this;
+        }
+
+        public Builder zone(String zone) {
+            this.zone = zone;
+            return this;
+        }
+
+        public Builder minimumProbeTimeout(Duration minimumProbeTimeout) {
+            this.minimumProbeTimeout = minimumProbeTimeout;
+            return this;
+        }
+
+        public Builder suspicionPolicy(Supplier<SuspicionPolicy> suspicionPolicy) {
+            this.suspicionPolicy = suspicionPolicy;
+            return this;
+        }
+
+        public Builder gossipInterval(Duration gossipInterval) {
+            this.gossipInterval = gossipInterval;
+            return this;
+        }
+
+        public Builder gossipFanout(int gossipFanout) {
+            this.gossipFanout = gossipFanout;
+            return this;
+        }
+
+        public Builder gossipMaximumUpdatesPerMessage(int gossipMaximumUpdatesPerMessage) {
+            this.gossipMaximumUpdatesPerMessage = gossipMaximumUpdatesPerMessage;
+            return this;
+        }
+
+        public Builder gossipBandwidthBytesPerSecond(long gossipBandwidthBytesPerSecond) {
+            this.gossipBandwidthBytesPerSecond = gossipBandwidthBytesPerSecond;
+            return this;
+        }
+
+        public Config build() {
+            return new Config(this);
+        }
     }
 }
@@ -0,0 +1,168 @@
+package atk.app.member;
+
+import atk.app.lifecycle.ThreadSafeLifecycle;
+import atk.app.network.NetworkClient;
+import atk.app.network.protocol.GossipRequest;
+import atk.app.util.ConcurrencyUtil;
+import atk.app.util.TokenBucket;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes recent member state changes to random live members every gossip interval, independently of probing.
+ * Every change is retransmitted a number of times that grows with the logarithm of the group size, the least
+ * transmitted changes are sent first. Gossip is fire and forget, its bandwidth is limited by a token bucket
+ */
+public class GossipRunner extends ThreadSafeLifecycle {
+    private static final int RETRANSMIT_MULTIPLIER = 4;
+    private final MemberList memberList;
+    private final NetworkClient networkClient;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Duration gossipInterval;
+    private final Duration requestTimeout;
+    private final int fanout;
+    private final int maximumUpdatesPerMessage;
+    private final TokenBucket bandwidth;
+    private final Map<MemberName, PendingUpdate> pendingUpdates = new ConcurrentHashMap<>();
+    private volatile ScheduledFuture<?> gossipJobFuture;
+
+    public GossipRunner(ExecutorService lifecycleExecutor, MemberList memberList, NetworkClient networkClient,
+                        Duration gossipInterval, Duration requestTimeout, int fanout, int maximumUpdatesPerMessage,
+                        long bandwidthBytesPerSecond) {
+        this(lifecycleExecutor, Executors.newSingleThreadScheduledExecutor(), true, memberList, networkClient, gossipInterval,
+                requestTimeout, fanout, maximumUpdatesPerMessage, bandwidthBytesPerSecond);
+    }
+
+    /**
+     * @param timer - shared timer that runs gossip ticks, a tick never waits. The client of this class is responsible for shutdowning it
+     */
+    public GossipRunner(ExecutorService lifecycleExecutor, ScheduledExecutorService timer, MemberList memberList,
+                        NetworkClient networkClient, Duration gossipInterval, Duration requestTimeout, int fanout,
+                        int maximumUpdatesPerMessage, long bandwidthBytesPerSecond) {
+        this(lifecycleExecutor, timer, false, memberList, networkClient, gossipInterval, requestTimeout, fanout,
+                maximumUpdatesPerMessage, bandwidthBytesPerSecond);
+    }
+
+    private GossipRunner(ExecutorService lifecycleExecutor, ScheduledExecutorService executor, boolean ownsExecutor,
+                         MemberList memberList, NetworkClient networkClient, Duration gossipInterval, Duration requestTimeout,
+                         int fanout, int maximumUpdatesPerMessage, long bandwidthBytesPerSecond) {
+        super(lifecycleExecutor);
+        this.memberList = memberList;
+        this.networkClient = networkClient;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.gossipInterval = gossipInterval;
+        this.requestTimeout = requestTimeout;
+        this.fanout = fanout;
+        this.maximumUpdatesPerMessage = maximumUpdatesPerMessage;
+        // one second of traffic can be sent in a burst
+        this.bandwidth = new TokenBucket(bandwidthBytesPerSecond, bandwidthBytesPerSecond);
+    }
+
+    /**
+     * Queues a changed state for gossip. A newer state of a member replaces the queued one
+     */
+    public void enqueue(MemberList.MemberState memberState) {
+        pendingUpdates.put(memberState.memberName, new PendingUpdate(memberState, 0));
+    }
+
+    @Override
+    protected void start0() {
+        this.gossipJobFuture = executor.scheduleAtFixedRate(this::gossip, gossipInterval.toMillis(), gossipInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        logger.debug("Start gossip runner for {}", memberList.getMyName());
+    }
+
+    @Override
+    protected void stop0() {
+        if (gossipJobFuture != null) {
+            gossipJobFuture.cancel(false);
+        }
+    }
+
+    @Override
+    protected void close0() {
+        if (ownsExecutor) {
+            ConcurrencyUtil.shutdownExecutor(executor);
+        }
+    }
+
+    private void gossip() {
+        try {
+            if (pendingUpdates.isEmpty()) {
+                return;
+            }
+            var liveMembers = memberList.getLiveMemberStatesWithoutMe();
+            if (liveMembers.isEmpty()) {
+                return;
+            }
+            var updates = nextUpdates(liveMembers.size() + 1);
+            if (updates.isEmpty()) {
+                return;
+            }
+            Collections.shuffle(liveMembers);
+            var request = gossipRequest(updates);
+            // states are encoded once when the request is measured, the snapshot reuses them when it's sent
+            long messageBytes = networkClient.encodedSize(request);
+            // a large batch is trimmed until a message to one target fits the bandwidth cap, the least transmitted
+            // updates are kept and the rest wait for the next tick
+            while (updates.size() > 1 && messageBytes > bandwidth.availableTokens()) {
+                updates = updates.subList(0, updates.size() / 2);
+                request = gossipRequest(updates);
+                messageBytes = networkClient.encodedSize(request);
+            }
+            // then targets are dropped to fit the rest of the cap
+            int targetCount = (int) Math.min(Math.min(fanout, liveMembers.size()), bandwidth.availableTokens() / Math.max(1, messageBytes));
+            if (targetCount == 0 || !bandwidth.tryAcquire(messageBytes * targetCount)) {
+                logger.debug("{} gossip is over the bandwidth cap, skip the tick", memberList.getMyName());
+                return;
+            }
+            var targets = liveMembers.subList(0, targetCount);
+            updates.forEach(this::markTransmitted);
+            var addresses = targets.stream().map(memberState -> memberState.bindAddress).collect(Collectors.toList());
+            logger.debug("{} gossips {} updates to {}", memberList.getMyName(), updates.size(), addresses);
+            //responses are ignored
+            networkClient.send(request, addresses, requestTimeout);
+        } catch (Exception ex) {
+            logger.error("{} gossip failed", memberList.getMyName(), ex);
+        }
+    }
+
+    /**
+     * Gossip carries only recent changes, so every member is encoded with its name and address
+     */
+    private static GossipRequest gossipRequest(List<PendingUpdate> updates) {
+        return new GossipRequest(new MemberStatesSnapshot(updates.stream().map(PendingUpdate::memberState).toList(), -1, null));
+    }
+
+    /**
+     * @return - the least transmitted updates. Updates that are transmitted enough times are dropped
+     */
+    private List<PendingUpdate> nextUpdates(int groupSize) {
+        var retransmitLimit = RETRANSMIT_MULTIPLIER * (int) Math.ceil(Math.log10(groupSize + 1));
+        pendingUpdates.values().removeIf(update -> update.transmits() >= retransmitLimit);
+        return pendingUpdates.values().stream()
+                .sorted(Comparator.comparingInt(PendingUpdate::transmits))
+                .limit(maximumUpdatesPerMessage)
+                .toList();
+    }
+
+    private void markTransmitted(PendingUpdate update) {
+        // update could be replaced by a newer state in the meantime
+        pendingUpdates.replace(update.memberState().memberName, update, new PendingUpdate(update.memberState(), update.transmits() + 1));
+    }
+
+    private record PendingUpdate(MemberList.MemberState memberState, int transmits) {
+    }
+}
@@ -0,0 +1,53 @@
+package atk.app.member;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * Picks random members that ping a probe target on behalf of the prober. The first helper is taken from the zone of the
+ * target, so the ping doesn't cross zones, and the others are spread across the remaining zones, so a failure
+ * of one zone doesn't look like a failure of the target
+ */
+class IndirectPingHelpers {
+    private final Random random;
+
+    IndirectPingHelpers(Random random) {
+        this.random = random;
+    }
+
+    List<MemberList.MemberState> select(List<MemberList.MemberState> liveMembers, MemberList.MemberState probeTarget, int helpers) {
+        var candidates = new ArrayList<MemberList.MemberState>();
+        for (MemberList.MemberState member : liveMembers) {
+            if (!member.memberName.equals(probeTarget.memberName)) {
+                candidates.add(member);
+            }
+        }
+        Collections.shuffle(candidates, random);
+        // members without a zone form one zone
+        Map<String, Queue<MemberList.MemberState>> zones = new LinkedHashMap<>();
+        if (candidates.stream().anyMatch(member -> Objects.equals(member.zone, probeTarget.zone))) {
+            zones.put(probeTarget.zone, new ArrayDeque<>());
+        }
+        candidates.forEach(member -> zones.computeIfAbsent(member.zone, zone -> new ArrayDeque<>()).add(member));
+        // zones are visited in turn, the zone of the target first
+        var result = new ArrayList<MemberList.MemberState>();
+        while (result.size() < helpers && !zones.isEmpty()) {
+            var iterator = zones.values().iterator();
+            while (iterator.hasNext() && result.size() < helpers) {
+                var zoneMembers = iterator.next();
+                result.add(zoneMembers.poll());
+                if (zoneMembers.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -2,23 +2,29 @@ package atk.app.member;
 
 import static atk.app.member.MemberList.MemberState;
 import static atk.app.member.MemberList.MemberStateType;
-import static atk.app.util.ExceptionUtil.ignoreThrownExceptions;
+import atk.app.lifecycle.Lifecycle;
+import atk.app.lifecycle.LifecycleGraph;
 import atk.app.lifecycle.ThreadSafeLifecycle;
 import atk.app.network.NetworkResponse;
 import atk.app.network.NetworkServer;
 import atk.app.network.NetworkClient;
 import atk.app.network.protocol.FullStateSyncRequest;
+import atk.app.network.protocol.LeaveRequest;
 import atk.app.network.protocol.NetworkRequestHandler;
 import atk.app.network.protocol.NetworkResponseHandler;
-import java.io.Closeable;
+import atk.app.runtime.SharedRuntime;
+import atk.app.util.FutureUtil;
 import java.net.SocketAddress;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,7 +34,9 @@ public class Member extends ThreadSafeLifecycle {
     //thread safe representation of member list
     private final MemberList memberList;
     //resources that need to be release on close
-    private final List<Closeable> closeables = new ArrayList<>();
+    private final List<Lifecycle<?>> closeables = new ArrayList<>();
+    //start and stop order of components
+    private final LifecycleGraph components = new LifecycleGraph();
     //network API
     private final NetworkServer<Void> networkServer;
     private final NetworkClient networkClient;
@@ -36,6 +44,11 @@ public class Member extends ThreadSafeLifecycle {
     private final NetworkRequestHandler requestHandler;
     private final SuspectTimers suspectTimers;
     private final ProbeRunner probeRunner;
+    private final GossipRunner gossipRunner;
+    private final NetworkCoordinates networkCoordinates;
+    private final SuspicionPolicy suspicionPolicy;
+    // consumes chunks of the full state, so they aren't applied on the network threads
+    private final Executor chunkExecutor;
 
     public Member(Config config, ExecutorService lifecycleExecutor,
                   NetworkServer<Void> networkServer, NetworkClient networkClient) {
@@ -43,61 +56,194 @@ public class Member extends ThreadSafeLifecycle {
         this.networkServer = networkServer;
         this.networkClient = networkClient;
         this.config = config;
+        this.chunkExecutor = lifecycleExecutor;
         // initial state of every member is alive state
-        this.memberList = new MemberList(new MemberState(config.memberName, config.bindAddress, 0, MemberStateType.ALIVE));
+        this.memberList = new MemberList(new MemberState(config.memberName, config.bindAddress, 0, MemberStateType.ALIVE,
+                Instant.now(), config.zone),
+                config.deadMemberRetention, config.probeTargetSelector);
         this.networkResponseHandler = new NetworkResponseHandler(memberList);
-        this.requestHandler = new NetworkRequestHandler(lifecycleExecutor, memberList, networkServer, networkClient, config.networkRequestMaximumDuration);
+        this.requestHandler = new NetworkRequestHandler(lifecycleExecutor, memberList, networkServer, networkClient,
+                config.networkRequestMaximumDuration, config.fullStateSyncChunkSize, config.requestHandlerThreads);
         closeables.add(requestHandler);
         // create suspect timers
         this.suspectTimers = new SuspectTimers(lifecycleExecutor, memberList, config.suspectedMemberDeadline);
         closeables.add(suspectTimers);
         //create probe runner
         this.probeRunner = new ProbeRunner(networkResponseHandler, networkClient, memberList, suspectTimers,
-                lifecycleExecutor, config.probePeriod, config.networkRequestMaximumDuration, config.indirectPingTargets);
+                lifecycleExecutor, config.probePeriod, config.networkRequestMaximumDuration, config.indirectPingTargets, probeTimeouts(config));
         closeables.add(probeRunner);
+        // a suspicion about me is refuted immediately
+        memberList.setSelfRefutationListener(probeRunner::disseminateRefutation);
+        // changed states are gossiped independently of probes
+        this.gossipRunner = new GossipRunner(lifecycleExecutor, memberList, networkClient, config.gossipInterval,
+                config.networkRequestMaximumDuration, config.gossipFanout, config.gossipMaximumUpdatesPerMessage,
+                config.gossipBandwidthBytesPerSecond);
+        closeables.add(gossipRunner);
+        memberList.setStateChangeListener(this::onStateChanged);
+        addComponents();
+        this.networkCoordinates = connectNetworkCoordinates();
+        this.suspicionPolicy = config.suspicionPolicy.get();
+        probeRunner.setSuspicionPolicy(suspicionPolicy);
+    }
+
+    /**
+     * Member that doesn't own threads. Requests and timers of the member run on the shared runtime, so many members
+     * can be hosted in one JVM. Network server and client should be created with the same runtime
+     */
+    public Member(Config config, SharedRuntime runtime, NetworkServer<Void> networkServer, NetworkClient networkClient) {
+        super(runtime.lifecycleExecutor());
+        this.networkServer = networkServer;
+        this.networkClient = networkClient;
+        this.config = config;
+        this.memberList = new MemberList(new MemberState(config.memberName, config.bindAddress, 0, MemberStateType.ALIVE,
+                Instant.now(), config.zone),
+                config.deadMemberRetention, config.probeTargetSelector);
+        this.networkResponseHandler = new NetworkResponseHandler(memberList);
+        var memberExecutor = runtime.newMemberExecutor(config.memberName.name());
+        this.chunkExecutor = memberExecutor;
+        this.requestHandler = new NetworkRequestHandler(lifecycleExecutor, memberList, networkServer, networkClient,
+                config.networkRequestMaximumDuration, config.fullStateSyncChunkSize, memberExecutor);
+        closeables.add(requestHandler);
+        this.suspectTimers = new SuspectTimers(lifecycleExecutor, runtime.timer(), memberExecutor, memberList,
+                config.suspectedMemberDeadline);
+        closeables.add(suspectTimers);
+        // probe doesn't wait for responses, so its steps run on the member executor with the requests of the member
+        this.probeRunner = new ProbeRunner(networkResponseHandler, networkClient, memberList, suspectTimers,
+                lifecycleExecutor, runtime.timer(), memberExecutor, config.probePeriod,
+                config.networkRequestMaximumDuration, config.indirectPingTargets, probeTimeouts(config));
+        closeables.add(probeRunner);
+        memberList.setSelfRefutationListener(probeRunner::disseminateRefutation);
+        this.gossipRunner = new GossipRunner(lifecycleExecutor, runtime.timer(), memberList, networkClient,
+                config.gossipInterval, config.networkRequestMaximumDuration, config.gossipFanout,
+                config.gossipMaximumUpdatesPerMessage, config.gossipBandwidthBytesPerSecond);
+        closeables.add(gossipRunner);
+        memberList.setStateChangeListener(this::onStateChanged);
+        addComponents();
+        this.networkCoordinates = connectNetworkCoordinates();
+        this.suspicionPolicy = config.suspicionPolicy.get();
+        probeRunner.setSuspicionPolicy(suspicionPolicy);
+    }
+
+    /**
+     * Changed states are gossiped, suspect timers of members that aren't suspected anymore are stopped and
+     * the suspicion policy forgets members that are dead or left
+     */
+    private void onStateChanged(MemberState memberState) {
+        gossipRunner.enqueue(memberState);
+        suspectTimers.onMemberStateChanged(memberState);
+        if (memberState.isDeadOrLeft()) {
+            suspicionPolicy.onRemoved(memberState.memberName);
+        }
+    }
+
+    private static ProbeTimeouts probeTimeouts(Config config) {
+        var minimumProbeTimeout = config.minimumProbeTimeout.compareTo(config.networkRequestMaximumDuration) < 0
+                ? config.minimumProbeTimeout : config.networkRequestMaximumDuration;
+        return new ProbeTimeouts(minimumProbeTimeout, config.networkRequestMaximumDuration);
+    }
+
+    /**
+     * Coordinates of members are learned from round trips of direct pings
+     */
+    private NetworkCoordinates connectNetworkCoordinates() {
+        var coordinates = new NetworkCoordinates(config.memberName);
+        requestHandler.setCoordinateSupplier(coordinates::getMyCoordinate);
+        probeRunner.setNetworkCoordinates(coordinates);
+        return coordinates;
+    }
+
+    /**
+     * Requests are processed as soon as the server accepts them and the server stops accepting them before
+     * the request handler drains the in-flight ones. Probe runner suspects members only while suspect timers are started
+     */
+    private void addComponents() {
+        components.add(requestHandler)
+                .add(networkServer, requestHandler)
+                .add(suspectTimers)
+                .add(probeRunner, suspectTimers)
+                .add(gossipRunner, networkServer);
     }
 
     @Override
     protected void start0() {
-        try {
-            networkServer.start().get(10, TimeUnit.SECONDS);
-            requestHandler.start().get(10, TimeUnit.SECONDS);
-            suspectTimers.start().get(10, TimeUnit.SECONDS);
-            probeRunner.start().get(10, TimeUnit.SECONDS);
-            logger.debug("Member {} was started", config.memberName.name());
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-            logger.error("Wasn't able to start a member {}", config.memberName.name(), e);
-            throw new RuntimeException("Wasn't able to start a member " + config.memberName.name(), e);
-        }
+        // components are started by startAsync0
+    }
+
+    @Override
+    protected CompletableFuture<Void> startAsync0() {
+        return components.start()
+                .whenComplete((unused, throwable) -> {
+                    if (throwable != null) {
+                        logger.error("Wasn't able to start a member {}", config.memberName.name(), throwable);
+                    } else {
+                        logger.debug("Member {} was started", config.memberName.name());
+                    }
+                });
     }
 
     @Override
     protected void stop0() {
-        try {
-            networkServer.stop().get(10, TimeUnit.SECONDS);
-            requestHandler.stop().get(10, TimeUnit.SECONDS);
-            suspectTimers.stop().get(10, TimeUnit.SECONDS);
-            probeRunner.stop().get(10, TimeUnit.SECONDS);
-            logger.debug("Member {} was stopped", memberList.getMyName());
-        } catch (Exception ex) {
-            logger.error("Wasn't able to stop " + memberList.getMyName(), ex);
-        }
+        // components are stopped by stopAsync0
+    }
+
+    @Override
+    protected CompletableFuture<Void> stopAsync0() {
+        return components.stop()
+                .handle((unused, throwable) -> {
+                    if (throwable != null) {
+                        logger.error("Wasn't able to stop " + memberList.getMyName(), throwable);
+                    } else {
+                        logger.debug("Member {} was stopped", memberList.getMyName());
+                    }
+                    return null;
+                });
     }
 
     @Override
     protected void close0() {
-        internalClose();
-        logger.debug("Member with name {} was successfully closed", config.memberName.name());
+        // components are closed by closeAsync0
     }
 
-    private void internalClose() {
-        closeables.forEach(c -> ignoreThrownExceptions(c::close, logger));
+    @Override
+    protected CompletableFuture<Void> closeAsync0() {
+        var closed = closeables.stream()
+                .map(closeable -> closeable.closeAsync().exceptionally(throwable -> {
+                    logger.warn("Wasn't able to close {}", closeable, throwable);
+                    return null;
+                }))
+                .toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(closed)
+                .thenRun(() -> logger.debug("Member with name {} was successfully closed", config.memberName.name()));
     }
 
     public List<MemberState> getMemberList() {
         return memberList.getMemberStates();
     }
 
+    /**
+     * @return - confidence that the member failed, the member is suspected after a failed probe when it reaches 1
+     */
+    public double getSuspicionLevel(MemberName memberName) {
+        return suspicionPolicy.suspicionLevel(memberName, Instant.now());
+    }
+
+    /**
+     * @return - estimated round trip time between two members, empty if any of them hasn't been pinged by this member yet
+     */
+    public Optional<Duration> estimateRtt(MemberName from, MemberName to) {
+        return networkCoordinates.estimateRtt(from, to);
+    }
+
+    /**
+     * @return - alive members sorted by estimated round trip time from this member, the nearest first
+     */
+    public List<MemberState> getAliveMembersByProximity() {
+        var aliveMembers = memberList.getLiveMemberStatesWithoutMe().stream()
+                .filter(MemberState::isAlive)
+                .toList();
+        return networkCoordinates.sortByProximity(aliveMembers);
+    }
+
     public CompletableFuture<NetworkResponse> joinToMember(SocketAddress target) {
         // when there is one member then this means that it hasn't joined any group
         var currentState = memberList.getMemberStates();
@@ -106,9 +252,32 @@ public class Member extends ThreadSafeLifecycle {
             return CompletableFuture.failedFuture(new IllegalStateException("Current state of member list should contains only me"));
         }
         var networkRequest = new FullStateSyncRequest(currentState.iterator().next());
-        return networkClient.send(networkRequest, target, config.networkRequestMaximumDuration)
+        // full state is applied chunk by chunk as it arrives
+        return networkClient.send(networkRequest, target, config.networkRequestMaximumDuration,
+                        networkResponseHandler::processNetworkResponse, chunkExecutor)
                 .whenComplete((networkResponse, throwable) ->
                         networkResponseHandler.processNetworkResponse(networkResponse, throwable, "Wasn't able to join member with address " + target));
 
     }
+
+    /**
+     * Gracefully leaves the group. Member notifies several members that it left, waits for a bounded number of acks
+     * and then stops. Notified members remove this member immediately without suspecting it
+     */
+    public CompletableFuture<Void> leave() {
+        var myLeftState = memberList.leave();
+        var liveMembers = memberList.getLiveMemberStatesWithoutMe();
+        Collections.shuffle(liveMembers);
+        var targets = liveMembers.stream()
+                .limit(config.leaveTargets)
+                .map(memberState -> memberState.bindAddress)
+                .collect(Collectors.toList());
+        logger.debug("Member {} leaves and notifies {}", config.memberName.name(), targets);
+        var responses = networkClient.send(new LeaveRequest(myLeftState), targets, config.networkRequestMaximumDuration);
+        return FutureUtil.awaitSuccesses(responses, Math.min(config.leaveAcks, responses.size()))
+                .thenCompose(acks -> {
+                    logger.debug("Member {} received {} acks on leave", config.memberName.name(), acks);
+                    return stop();
+                });
+    }
 }
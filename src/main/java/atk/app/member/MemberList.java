@@ -1,19 +1,24 @@
 package atk.app.member;
 
+import static atk.app.member.MemberList.MemberState.isKillLocalMember;
 import static atk.app.member.MemberList.MemberState.isReviveLocalSuspectedMember;
 import static atk.app.member.MemberList.MemberState.isSuspectLocalAliveMember;
 import static atk.app.member.MemberList.MemberState.isUpdateOfMemberStateWithTheSameType;
 import static atk.app.util.FutureUtil.VOID;
 import java.io.Serializable;
 import java.net.SocketAddress;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,19 +28,83 @@ import org.slf4j.LoggerFactory;
  */
 public class MemberList {
     private static final Logger logger = LoggerFactory.getLogger(MemberList.class);
+    public static final Duration DEFAULT_TOMBSTONE_RETENTION = Duration.ofMinutes(1);
+    /**
+     * Member that changed within this window is sent with its name and address. Dissemination of a change
+     * takes a few probe periods, so the window should be much longer than a probe period
+     */
+    public static final Duration DEFAULT_RECENT_CHANGE_WINDOW = Duration.ofSeconds(30);
+    /**
+     * Every member is sent with its name and address once in this interval, so a member that missed a change learns
+     * about it even if the change isn't recent anymore
+     */
+    public static final Duration DEFAULT_FULL_DEFINITIONS_INTERVAL = Duration.ofSeconds(10);
+    // alive and suspected members
     private final Map<MemberName, MemberState> othersState = new HashMap<>();
-    //protect other state from concurrent access
+    // dead and left members. They are kept only to suppress stale gossip and are reaped after tombstoneRetention
+    private final Map<MemberName, Tombstone> tombstones = new HashMap<>();
+    //protect other state and tombstones from concurrent access
     private final ReentrantLock otherStateLock = new ReentrantLock();
-    // my state is extracted in separate field because nobody can modify my state
-    private final MemberState myState;
-    // used t
+    // my state is extracted in separate field because only I can modify my state. It is modified under otherStateLock
+    private volatile MemberState myState;
+    // notified with my new state when I refute a suspicion or a death
+    private volatile Consumer<MemberState> selfRefutationListener = memberState -> {
+    };
+    // notified with every new state of any member including me
+    private volatile Consumer<MemberState> stateChangeListener = memberState -> {
+    };
+    private final Duration tombstoneRetention;
+    // used to pick the next member to probe. Contains only alive and suspected members
     private final List<MemberState> roundRobinMemberStates = new ArrayList<>();
     private final ReentrantLock roundRobinMemberStatesLock = new ReentrantLock();
-    private final RoundRobinStrategy roundRobinStrategy;
+    private final ProbeTargetSelector probeTargetSelector;
+    // incremented on every change of member states. It is modified under otherStateLock
+    private volatile long version;
+    // member states of the current version, null until it's requested. It is modified under otherStateLock
+    private MemberStatesSnapshot snapshot;
+    // names of known members by their wire ids. It is modified under otherStateLock
+    private final Map<Long, MemberName> namesById = new HashMap<>();
+    // local time of the last change of every known member, so clocks of other members don't matter. It is modified under otherStateLock
+    private final Map<MemberName, Instant> lastChanged = new HashMap<>();
+    private final Duration recentChangeWindow;
+    private final Duration fullDefinitionsInterval;
+    // the snapshot is taken again when one of its recent changes gets old. It is modified under otherStateLock
+    private Instant snapshotExpiresAt = Instant.MAX;
+    // the first snapshot requested after it contains full definitions. It is modified under otherStateLock
+    private Instant nextFullDefinitions;
 
     public MemberList(MemberState myState) {
+        this(myState, DEFAULT_TOMBSTONE_RETENTION);
+    }
+
+    /**
+     * @param tombstoneRetention - how long a dead member is remembered. It should be longer than the time needed
+     *                           for a death to be disseminated, otherwise stale gossip can resurrect the member
+     */
+    public MemberList(MemberState myState, Duration tombstoneRetention) {
+        this(myState, tombstoneRetention, ProbeTargetSelector.roundRobin());
+    }
+
+    /**
+     * @param probeTargetSelector - creates a selector that picks the next member to ping from alive and suspected members
+     */
+    public MemberList(MemberState myState, Duration tombstoneRetention, ProbeTargetSelector.Factory probeTargetSelector) {
+        this(myState, tombstoneRetention, probeTargetSelector, DEFAULT_RECENT_CHANGE_WINDOW, DEFAULT_FULL_DEFINITIONS_INTERVAL);
+    }
+
+    /**
+     * @param recentChangeWindow      - members that changed within this window are sent with their names and addresses
+     * @param fullDefinitionsInterval - every member is sent with its name and address once in this interval
+     */
+    MemberList(MemberState myState, Duration tombstoneRetention, ProbeTargetSelector.Factory probeTargetSelector,
+               Duration recentChangeWindow, Duration fullDefinitionsInterval) {
         this.myState = myState;
-        this.roundRobinStrategy = new RoundRobinStrategy(roundRobinMemberStates);
+        this.recentChangeWindow = recentChangeWindow;
+        this.fullDefinitionsInterval = fullDefinitionsInterval;
+        this.nextFullDefinitions = Instant.now().plus(fullDefinitionsInterval);
+        this.namesById.put(MemberStatesSnapshot.idOf(myState), myState.memberName);
+        this.tombstoneRetention = tombstoneRetention;
+        this.probeTargetSelector = probeTargetSelector.create(roundRobinMemberStates);
     }
 
     public boolean suspectMember(MemberName memberName) {
@@ -90,28 +159,176 @@ public class MemberList {
     }
 
     public void update(Map<MemberName, MemberState> remoteStates) {
-        callAndProtectBy(otherStateLock, () -> {
-            remoteStates.forEach((memberName, remoteState) -> {
-                //TODO - what action you need to do if you are in suspected state
+        update(List.copyOf(remoteStates.values()));
+    }
+
+    /**
+     * Applies remote states that change my view of the group. Entries of a received {@link MemberStatesSnapshot} are
+     * decoded only when they change something, so a message that brings nothing new costs almost no allocations
+     */
+    public void update(List<MemberState> remoteStates) {
+        var refutation = callAndProtectBy(otherStateLock, () -> {
+            reapExpiredTombstones();
+            var myRefutedState = new AtomicReference<MemberState>();
+            Consumer<MemberState> applyRemoteState = remoteState -> {
                 //only I can update my state
-                if (memberName.equals(myState.memberName)) {
-                    return;
+                if (remoteState.memberName.equals(myState.memberName)) {
+                    refute(remoteState);
+                    myRefutedState.set(myState);
+                } else {
+                    putANewState(remoteState.memberName, remoteState);
                 }
-                var localState = othersState.get(memberName);
-                if (localState == null ||
-                        remoteState.stateType.isDead() ||
-                        isSuspectLocalAliveMember(localState, remoteState) ||
-                        isReviveLocalSuspectedMember(localState, remoteState) ||
-                        isUpdateOfMemberStateWithTheSameType(localState, remoteState)) {
-                    putANewState(memberName, remoteState);
+            };
+            if (remoteStates instanceof MemberStatesSnapshot snapshot) {
+                var unresolved = snapshot.forEach(this::resolve, this::changesState, applyRemoteState);
+                if (unresolved > 0) {
+                    logger.debug("{} skipped {} states of unknown members", myState.memberName, unresolved);
                 }
-            });
-            return VOID;
+            } else {
+                remoteStates.stream()
+                        .filter(remoteState -> changesState(remoteState.memberName, remoteState.incarnation, remoteState.stateType))
+                        .forEach(applyRemoteState);
+            }
+            return myRefutedState.get();
+        });
+        if (refutation != null) {
+            selfRefutationListener.accept(refutation);
+        }
+    }
+
+    /**
+     * otherStateLock should be taken before usage of this function
+     *
+     * @return - known state of a member with the given wire id or null
+     */
+    private MemberState resolve(long id) {
+        var memberName = namesById.get(id);
+        if (memberName == null) {
+            return null;
+        }
+        MemberState knownState;
+        if (memberName.equals(myState.memberName)) {
+            knownState = myState;
+        } else {
+            knownState = othersState.get(memberName);
+            var tombstone = tombstones.get(memberName);
+            if (knownState == null && tombstone != null) {
+                knownState = tombstone.memberState();
+            }
+        }
+        // the member could have changed its address
+        return knownState != null && MemberStatesSnapshot.idOf(knownState) == id ? knownState : null;
+    }
+
+    /**
+     * otherStateLock should be taken before usage of this function
+     *
+     * @return - true if the remote state of a member overrides my view of it
+     */
+    private boolean changesState(MemberName memberName, int incarnation, MemberStateType stateType) {
+        if (memberName.equals(myState.memberName)) {
+            return shouldRefute(incarnation, stateType);
+        }
+        var tombstone = tombstones.get(memberName);
+        if (tombstone != null) {
+            // only a newer incarnation of a dead or left member can rejoin, everything else is stale gossip
+            var rejoined = !stateType.isDeadOrLeft() && incarnation > tombstone.memberState().incarnation;
+            if (rejoined) {
+                logger.debug("{} observed that dead member {} rejoined", myState.memberName, memberName);
+            }
+            return rejoined;
+        }
+        var localState = othersState.get(memberName);
+        return localState == null ||
+                isKillLocalMember(localState, incarnation, stateType) ||
+                isSuspectLocalAliveMember(localState, incarnation, stateType) ||
+                isReviveLocalSuspectedMember(localState, incarnation, stateType) ||
+                isUpdateOfMemberStateWithTheSameType(localState, incarnation, stateType);
+    }
+
+    /**
+     * Somebody suspects me or thinks that I'm dead, or knows a newer incarnation of me (e.g. before restart).
+     * I stay alive with an incarnation that overrides the remote state.
+     * otherStateLock should be taken before usage of this function
+     *
+     * @return - true if the remote state of me should be refuted
+     */
+    private boolean shouldRefute(int incarnation, MemberStateType stateType) {
+        var currentState = myState;
+        return !(currentState.isLeft() ||
+                incarnation < currentState.incarnation ||
+                (incarnation == currentState.incarnation && stateType.isAlive()));
+    }
+
+    /**
+     * otherStateLock should be taken before usage of this function. It should be called only if {@link #shouldRefute} is true
+     */
+    private void refute(MemberState remoteStateOfMe) {
+        var currentState = myState;
+        myState = new MemberState(currentState.memberName, currentState.bindAddress, remoteStateOfMe.incarnation + 1, MemberStateType.ALIVE, Instant.now(), currentState.zone);
+        logger.info("{} refuted {} state with incarnation {}", currentState.memberName, remoteStateOfMe.stateType, myState.incarnation);
+        version++;
+        stateChangeListener.accept(myState);
+    }
+
+    /**
+     * Marks me as left with a bumped incarnation, so my leave overrides any other state about me.
+     * After this call I never refute a suspicion
+     *
+     * @return - my left state that should be disseminated
+     */
+    public MemberState leave() {
+        return callAndProtectBy(otherStateLock, () -> {
+            var currentState = myState;
+            if (!currentState.isLeft()) {
+                myState = new MemberState(currentState.memberName, currentState.bindAddress, currentState.incarnation + 1, MemberStateType.LEFT, Instant.now(), currentState.zone);
+                logger.debug("{} left with incarnation {}", currentState.memberName, myState.incarnation);
+                version++;
+                stateChangeListener.accept(myState);
+            }
+            return myState;
         });
     }
 
+    /**
+     * @param listener - is called with my new state every time when I refute a suspicion. It is called outside of member list locks
+     */
+    public void setSelfRefutationListener(Consumer<MemberState> listener) {
+        this.selfRefutationListener = listener;
+    }
+
+    /**
+     * @param listener - is called with every new state of any member. It is called under member list locks, so it shouldn't block
+     */
+    public void setStateChangeListener(Consumer<MemberState> listener) {
+        this.stateChangeListener = listener;
+    }
+
+    /**
+     * otherStateLock should be taken before usage of this function
+     */
     private void putANewState(MemberName memberName, MemberState newState) {
-        othersState.put(memberName, newState);
+        version++;
+        stateChangeListener.accept(newState);
+        var previous = othersState.get(memberName);
+        var tombstone = tombstones.get(memberName);
+        if (previous == null && tombstone != null) {
+            previous = tombstone.memberState();
+        }
+        var newId = MemberStatesSnapshot.idOf(newState);
+        //the member changed its address, its old id can't be resolved anymore
+        if (previous != null && MemberStatesSnapshot.idOf(previous) != newId) {
+            namesById.remove(MemberStatesSnapshot.idOf(previous), memberName);
+        }
+        namesById.put(newId, memberName);
+        lastChanged.put(memberName, Instant.now());
+        if (newState.isDeadOrLeft()) {
+            othersState.remove(memberName);
+            tombstones.put(memberName, new Tombstone(newState, Instant.now().plus(tombstoneRetention)));
+        } else {
+            tombstones.remove(memberName);
+            othersState.put(memberName, newState);
+        }
         callAndProtectBy(roundRobinMemberStatesLock, () -> {
             //member to be removed
             int memberIndex = -1;
@@ -121,35 +338,128 @@ public class MemberList {
                     break;
                 }
             }
+            MemberState previousState = null;
             if (memberIndex != -1) {
-                roundRobinMemberStates.remove(memberIndex);
+                previousState = roundRobinMemberStates.remove(memberIndex);
+            }
+            //dead and left members are not probed
+            if (!newState.isDeadOrLeft()) {
+                roundRobinMemberStates.add(newState);
+                probeTargetSelector.onMemberStateChanged(previousState, newState);
             }
-            roundRobinMemberStates.add(newState);
             return VOID;
         });
     }
 
     /**
-     * This method is thread-safe because myState never change
+     * otherStateLock should be taken before usage of this function
+     */
+    private void reapExpiredTombstones() {
+        if (tombstones.isEmpty()) {
+            return;
+        }
+        var now = Instant.now();
+        var reaped = tombstones.values().removeIf(tombstone -> {
+            if (tombstone.expiresAt().isAfter(now)) {
+                return false;
+            }
+            logger.debug("{} forgot dead member {}", myState.memberName, tombstone.memberState().memberName);
+            namesById.remove(MemberStatesSnapshot.idOf(tombstone.memberState()));
+            lastChanged.remove(tombstone.memberState().memberName);
+            return true;
+        });
+        if (reaped) {
+            version++;
+        }
+    }
+
+    /**
+     * This method is thread-safe because my name never change
      */
     public MemberName getMyName() {
         return myState.memberName;
     }
 
+    public MemberState getMyState() {
+        return myState;
+    }
+
+    /**
+     * @return - all known members including dead and left members which are not reaped yet, so it can be disseminated
+     */
     public List<MemberState> getMemberStates() {
         return callAndProtectBy(otherStateLock, () -> {
-            var memberStateCopy = new ArrayList<>(othersState.values());
+            var memberStateCopy = getMemberStateWithoutMe0();
             memberStateCopy.add(myState);
             return memberStateCopy;
         });
     }
 
+    /**
+     * @return - the same as {@link #getMemberStates()}, but immutable. It is cached until the next change of member states,
+     * so messages that carry it reuse its encoded form. Members that I didn't see changing recently are encoded as
+     * references that only members that know them can resolve. Once in a full definitions interval the snapshot
+     * contains every member with its name and address
+     */
+    public MemberStatesSnapshot getMemberStatesSnapshot() {
+        return callAndProtectBy(otherStateLock, () -> {
+            reapExpiredTombstones();
+            var now = Instant.now();
+            if (snapshot == null || snapshot.getVersion() != version || !now.isBefore(snapshotExpiresAt)) {
+                var memberStates = getMemberStateWithoutMe0();
+                memberStates.add(myState);
+                var definitions = new HashSet<MemberName>();
+                definitions.add(myState.memberName);
+                var expiresAt = Instant.MAX;
+                for (var changed : lastChanged.entrySet()) {
+                    var changeGetsOld = changed.getValue().plus(recentChangeWindow);
+                    if (changeGetsOld.isAfter(now)) {
+                        definitions.add(changed.getKey());
+                        expiresAt = changeGetsOld.isBefore(expiresAt) ? changeGetsOld : expiresAt;
+                    }
+                }
+                snapshot = new MemberStatesSnapshot(memberStates, version, definitions);
+                snapshotExpiresAt = expiresAt;
+            }
+            if (!now.isBefore(nextFullDefinitions)) {
+                nextFullDefinitions = now.plus(fullDefinitionsInterval);
+                return snapshot.withFullDefinitions();
+            }
+            return snapshot;
+        });
+    }
+
+    /**
+     * @return - number that is incremented on every change of member states
+     */
+    public long getVersion() {
+        return version;
+    }
+
     public List<MemberState> getMemberStateWithoutMe() {
+        return callAndProtectBy(otherStateLock, this::getMemberStateWithoutMe0);
+    }
+
+    /**
+     * @return - alive and suspected members without me
+     */
+    public List<MemberState> getLiveMemberStatesWithoutMe() {
         return callAndProtectBy(otherStateLock, () -> new ArrayList<>(othersState.values()));
     }
 
+    private List<MemberState> getMemberStateWithoutMe0() {
+        reapExpiredTombstones();
+        var memberStateCopy = new ArrayList<MemberState>(othersState.size() + tombstones.size() + 1);
+        memberStateCopy.addAll(othersState.values());
+        tombstones.values().forEach(tombstone -> memberStateCopy.add(tombstone.memberState()));
+        return memberStateCopy;
+    }
+
+    /**
+     * @return - next alive or suspected member to probe or null if there is no such member
+     */
     public MemberState nextMemberToPing() {
-        return callAndProtectBy(roundRobinMemberStatesLock, roundRobinStrategy::nextMember);
+        return callAndProtectBy(roundRobinMemberStatesLock, () -> roundRobinMemberStates.isEmpty() ? null : probeTargetSelector.nextMember());
     }
 
     private <T> T callAndProtectBy(ReentrantLock lock, Supplier<T> supplier) {
@@ -161,12 +471,16 @@ public class MemberList {
         }
     }
 
+    private record Tombstone(MemberState memberState, Instant expiresAt) {
+    }
+
     public static class MemberState implements Serializable {
         public final MemberName memberName;
         public final SocketAddress bindAddress;
         public final int incarnation; // last known incarnation number
         public final MemberStateType stateType;
         public final Instant updated; // Time last state changed
+        public final String zone; // availability zone or rack of the member, null if it's unknown
         //TODO - add max, min and curr supported versions
 
         public MemberState(MemberName memberName,
@@ -181,30 +495,40 @@ public class MemberList {
                            int incarnation,
                            MemberStateType stateType,
                            Instant updated) {
+            this(memberName, bindAddress, incarnation, stateType, updated, null);
+        }
+
+        public MemberState(MemberName memberName,
+                           SocketAddress bindAddress,
+                           int incarnation,
+                           MemberStateType stateType,
+                           Instant updated,
+                           String zone) {
             this.memberName = memberName;
             this.bindAddress = bindAddress;
             this.incarnation = incarnation;
             this.stateType = stateType;
             this.updated = updated;
+            this.zone = zone;
         }
 
         public MemberState tryToSuspectMember() {
             if (isAlive()) {
-                return new MemberState(memberName, bindAddress, incarnation, MemberStateType.SUSPECTED, Instant.now());
+                return new MemberState(memberName, bindAddress, incarnation, MemberStateType.SUSPECTED, Instant.now(), zone);
             }
             return this;
         }
 
         public MemberState tryToKillMember() {
             if (isSuspected()) {
-                return new MemberState(memberName, bindAddress, incarnation, MemberStateType.DEAD, Instant.now());
+                return new MemberState(memberName, bindAddress, incarnation, MemberStateType.DEAD, Instant.now(), zone);
             }
             return this;
         }
 
         public MemberState tryToAliveMember() {
             if (isSuspected()) {
-                return new MemberState(memberName, bindAddress, incarnation, MemberStateType.ALIVE, Instant.now());
+                return new MemberState(memberName, bindAddress, incarnation, MemberStateType.ALIVE, Instant.now(), zone);
             }
             return this;
         }
@@ -221,20 +545,34 @@ public class MemberList {
             return stateType.isDead();
         }
 
-        static boolean isSuspectLocalAliveMember(MemberState local, MemberState remote) {
-            return local.incarnation <= remote.incarnation &&
+        public boolean isLeft() {
+            return stateType.isLeft();
+        }
+
+        public boolean isDeadOrLeft() {
+            return isDead() || isLeft();
+        }
+
+        static boolean isSuspectLocalAliveMember(MemberState local, int remoteIncarnation, MemberStateType remoteStateType) {
+            return local.incarnation <= remoteIncarnation &&
                     local.stateType == MemberStateType.ALIVE &&
-                    remote.stateType == MemberStateType.SUSPECTED;
+                    remoteStateType == MemberStateType.SUSPECTED;
+        }
+
+        // dead or left state of an older incarnation is stale, the member refuted or rejoined after it
+        static boolean isKillLocalMember(MemberState local, int remoteIncarnation, MemberStateType remoteStateType) {
+            return local.incarnation <= remoteIncarnation &&
+                    remoteStateType.isDeadOrLeft();
         }
 
-        static boolean isReviveLocalSuspectedMember(MemberState local, MemberState remote) {
-            return local.incarnation < remote.incarnation &&
+        static boolean isReviveLocalSuspectedMember(MemberState local, int remoteIncarnation, MemberStateType remoteStateType) {
+            return local.incarnation < remoteIncarnation &&
                     local.stateType == MemberStateType.SUSPECTED &&
-                    remote.stateType == MemberStateType.ALIVE;
+                    remoteStateType == MemberStateType.ALIVE;
         }
 
-        static boolean isUpdateOfMemberStateWithTheSameType(MemberState local, MemberState remote) {
-            return local.stateType == remote.stateType && local.incarnation < remote.incarnation;
+        static boolean isUpdateOfMemberStateWithTheSameType(MemberState local, int remoteIncarnation, MemberStateType remoteStateType) {
+            return local.stateType == remoteStateType && local.incarnation < remoteIncarnation;
         }
 
         @Override
@@ -242,12 +580,12 @@ public class MemberList {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             MemberState that = (MemberState) o;
-            return incarnation == that.incarnation && Objects.equals(memberName, that.memberName) && Objects.equals(bindAddress, that.bindAddress) && stateType == that.stateType && Objects.equals(updated, that.updated);
+            return incarnation == that.incarnation && Objects.equals(memberName, that.memberName) && Objects.equals(bindAddress, that.bindAddress) && stateType == that.stateType && Objects.equals(updated, that.updated) && Objects.equals(zone, that.zone);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(memberName, bindAddress, incarnation, stateType, updated);
+            return Objects.hash(memberName, bindAddress, incarnation, stateType, updated, zone);
         }
 
         @Override
@@ -258,12 +596,17 @@ public class MemberList {
                     ", incarnation=" + incarnation +
                     ", stateType=" + stateType +
                     ", updated=" + updated +
+                    ", zone=" + zone +
                     '}';
         }
     }
 
     public enum MemberStateType implements Serializable {
-        ALIVE, DEAD, SUSPECTED;
+        ALIVE, DEAD, SUSPECTED,
+        /**
+         * Member gracefully left the group. It is removed immediately without being suspected
+         */
+        LEFT;
 
 
         public boolean isDead() {
@@ -277,9 +620,17 @@ public class MemberList {
         public boolean isAlive() {
             return this == ALIVE;
         }
+
+        public boolean isLeft() {
+            return this == LEFT;
+        }
+
+        public boolean isDeadOrLeft() {
+            return isDead() || isLeft();
+        }
     }
 
-    static class RoundRobinStrategy {
+    static class RoundRobinStrategy implements ProbeTargetSelector {
         private final List<MemberState> roundRobinMemberStates;
         private int nextIndex = 0;
 
@@ -290,7 +641,8 @@ public class MemberList {
         /**
          * roundRobinMemberStatesLock should be taken before usage of this function
          */
-        MemberState nextMember() {
+        @Override
+        public MemberState nextMember() {
             if (nextIndex == 0) {
                 Collections.shuffle(roundRobinMemberStates);
             }
@@ -0,0 +1,361 @@
+package atk.app.member;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Immutable list of member states of one {@link MemberList#getVersion() version} of a member list. It is encoded
+ * in a compact form once, when it's serialized for the first time, and every next message reuses the encoded bytes
+ * until the member list changes. A received snapshot keeps its encoded form and decodes entries only when they are
+ * accessed, see {@link #forEach(EntryResolver, EntryFilter, Consumer)}.
+ * <p>
+ * A member that isn't among the definitions of the snapshot is encoded as a reference: a 64-bit {@link #idOf id} of
+ * its name and address instead of them. A receiver resolves the id from its own member list. The member list defines
+ * the sender and members that it saw changing recently, so receivers learn about them. Full state syncs use
+ * {@link #withFullDefinitions()}, so a joining member learns about everybody
+ */
+public class MemberStatesSnapshot extends AbstractList<MemberList.MemberState> implements RandomAccess, Externalizable {
+    private static final long serialVersionUID = 1L;
+    private static final byte DEFINITION = 0;
+    private static final byte REFERENCE = 1;
+    private static final byte INET_ADDRESS = 0;
+    private static final byte UNRESOLVED_ADDRESS = 1;
+    private static final byte SERIALIZED_ADDRESS = 2;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final MemberList.MemberStateType[] STATE_TYPES = MemberList.MemberStateType.values();
+    // tail of an entry is prefixed with an unsigned short
+    private static final int MAXIMUM_TAIL_LENGTH = 0xFFFF;
+    /**
+     * Serialized address of a received entry can contain only socket addresses and classes of java.net that they
+     * are made of, so a peer can't make a member deserialize anything else
+     */
+    private static final ObjectInputFilter ADDRESS_FILTER = info -> {
+        var serialClass = info.serialClass();
+        if (serialClass == null) {
+            return ObjectInputFilter.Status.UNDECIDED;
+        }
+        while (serialClass.isArray()) {
+            serialClass = serialClass.getComponentType();
+        }
+        if (serialClass.isPrimitive() || SocketAddress.class.isAssignableFrom(serialClass)
+                || serialClass.getPackageName().equals("java.net")) {
+            return ObjectInputFilter.Status.ALLOWED;
+        }
+        return ObjectInputFilter.Status.REJECTED;
+    };
+    // null until a received snapshot is accessed as a list
+    private volatile List<MemberList.MemberState> memberStates;
+    private long version;
+    // members encoded with their names and addresses. Null if every member is encoded so
+    private Set<MemberName> definitions;
+    // encoded member states, null until the snapshot is serialized
+    private volatile byte[] encoded;
+    private volatile MemberStatesSnapshot fullDefinitions;
+
+    /**
+     * Used only by deserialization
+     */
+    public MemberStatesSnapshot() {
+        this(List.of(), -1, null);
+    }
+
+    /**
+     * @param definitions - members that should be encoded with their names and addresses, the rest is encoded as
+     *                    references. Null if every member should be encoded with its name and address
+     */
+    MemberStatesSnapshot(List<MemberList.MemberState> memberStates, long version, Set<MemberName> definitions) {
+        this.memberStates = List.copyOf(memberStates);
+        this.version = version;
+        this.definitions = definitions == null ? null : Set.copyOf(definitions);
+    }
+
+    /**
+     * @return - version of the member list this snapshot was taken from. Deserialized snapshots have no version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return - the same member states, every one of them is encoded with its name and address
+     */
+    public MemberStatesSnapshot withFullDefinitions() {
+        if (definitions == null) {
+            return this;
+        }
+        var snapshot = fullDefinitions;
+        if (snapshot == null) {
+            snapshot = new MemberStatesSnapshot(materialize(), version, null);
+            fullDefinitions = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return - stable id of the name and the address of a member. It is used to refer to the member on the wire
+     */
+    public static long idOf(MemberList.MemberState memberState) {
+        var hash = FNV_OFFSET_BASIS;
+        var identity = memberState.memberName.name() + '@' + identityOf(memberState.bindAddress);
+        for (int i = 0; i < identity.length(); i++) {
+            hash = (hash ^ identity.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static String identityOf(SocketAddress address) {
+        if (address instanceof InetSocketAddress inetAddress) {
+            var host = inetAddress.isUnresolved() ? inetAddress.getHostString() : inetAddress.getAddress().getHostAddress();
+            return host + ':' + inetAddress.getPort();
+        }
+        return String.valueOf(address);
+    }
+
+    /**
+     * References can be resolved only by a member list, so a received snapshot with references can't be accessed as
+     * a list. It should be applied with {@link MemberList#update(List)}
+     *
+     * @throws IllegalStateException - if the received snapshot contains references
+     */
+    @Override
+    public MemberList.MemberState get(int index) {
+        return materialize().get(index);
+    }
+
+    @Override
+    public int size() {
+        return materialize().size();
+    }
+
+    /**
+     * Entries are decoded only by {@link #forEach(EntryResolver, EntryFilter, Consumer)}, so printing a received
+     * snapshot doesn't decode it
+     */
+    @Override
+    public String toString() {
+        var states = memberStates;
+        return states != null ? states.toString() : "MemberStatesSnapshot[" + encoded.length + " bytes]";
+    }
+
+    /**
+     * Passes member states that the filter accepts to the consumer. Name, incarnation and state type of an encoded
+     * entry are decoded first, the rest of the entry is decoded only if the filter accepts it
+     *
+     * @param resolver - returns a known state of the member with the given id or null. Entries with unknown ids are skipped
+     * @return - number of skipped entries with unknown ids
+     */
+    public int forEach(EntryResolver resolver, EntryFilter filter, Consumer<MemberList.MemberState> consumer) {
+        var states = memberStates;
+        if (states != null) {
+            states.stream()
+                    .filter(memberState -> filter.accept(memberState.memberName, memberState.incarnation, memberState.stateType))
+                    .forEach(consumer);
+            return 0;
+        }
+        var unresolved = 0;
+        try {
+            var in = new DataInputStream(new ByteArrayInputStream(encoded));
+            var size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                var kind = in.readByte();
+                MemberName memberName;
+                MemberList.MemberState knownState = null;
+                if (kind == REFERENCE) {
+                    knownState = resolver.resolve(in.readLong());
+                    memberName = knownState == null ? null : knownState.memberName;
+                } else {
+                    memberName = new MemberName(in.readUTF());
+                }
+                var incarnation = in.readInt();
+                var stateType = STATE_TYPES[in.readByte()];
+                var tailLength = in.readUnsignedShort();
+                if (memberName == null) {
+                    unresolved++;
+                    in.skipNBytes(tailLength);
+                } else if (filter.accept(memberName, incarnation, stateType)) {
+                    var bindAddress = knownState == null ? readAddress(in) : knownState.bindAddress;
+                    var updated = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                    var zone = in.readBoolean() ? in.readUTF() : null;
+                    consumer.accept(new MemberList.MemberState(memberName, bindAddress, incarnation, stateType, updated, zone));
+                } else {
+                    in.skipNBytes(tailLength);
+                }
+            }
+        } catch (IOException | ClassNotFoundException ex) {
+            throw new IllegalStateException("Wasn't able to decode member states", ex);
+        }
+        return unresolved;
+    }
+
+    private List<MemberList.MemberState> materialize() {
+        var states = memberStates;
+        if (states == null) {
+            var decoded = new ArrayList<MemberList.MemberState>();
+            var references = forEach(id -> null, (memberName, incarnation, stateType) -> true, decoded::add);
+            if (references > 0) {
+                throw new IllegalStateException("Snapshot contains " + references + " references that only a member list can resolve");
+            }
+            states = List.copyOf(decoded);
+            memberStates = states;
+        }
+        return states;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        var bytes = getEncoded();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        // entries are decoded when they are accessed
+        this.memberStates = null;
+        this.encoded = bytes;
+    }
+
+    private byte[] getEncoded() {
+        var bytes = encoded;
+        if (bytes == null) {
+            // concurrent writers could encode it twice, both results are equal
+            bytes = encode(memberStates, definitions);
+            encoded = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Every entry starts with the fields that decide whether it changes a member list, the rest of it is prefixed
+     * with its length, so it can be skipped. A reference has no address in the rest of the entry
+     */
+    private static byte[] encode(List<MemberList.MemberState> memberStates, Set<MemberName> definitions) {
+        try {
+            var buffer = new ByteArrayOutputStream(memberStates.size() * 32);
+            var out = new DataOutputStream(buffer);
+            var tailBuffer = new ByteArrayOutputStream(64);
+            var tail = new DataOutputStream(tailBuffer);
+            out.writeInt(memberStates.size());
+            for (MemberList.MemberState memberState : memberStates) {
+                var reference = definitions != null && !definitions.contains(memberState.memberName);
+                if (reference) {
+                    out.writeByte(REFERENCE);
+                    out.writeLong(idOf(memberState));
+                } else {
+                    out.writeByte(DEFINITION);
+                    out.writeUTF(memberState.memberName.name());
+                }
+                out.writeInt(memberState.incarnation);
+                out.writeByte(memberState.stateType.ordinal());
+                tailBuffer.reset();
+                if (!reference) {
+                    writeAddress(tail, memberState.bindAddress);
+                }
+                tail.writeLong(memberState.updated.getEpochSecond());
+                tail.writeInt(memberState.updated.getNano());
+                tail.writeBoolean(memberState.zone != null);
+                if (memberState.zone != null) {
+                    tail.writeUTF(memberState.zone);
+                }
+                tail.flush();
+                if (tailBuffer.size() > MAXIMUM_TAIL_LENGTH) {
+                    throw new IllegalArgumentException("State of " + memberState.memberName + " takes " + tailBuffer.size()
+                            + " bytes, at most " + MAXIMUM_TAIL_LENGTH + " can be encoded");
+                }
+                out.writeShort(tailBuffer.size());
+                tailBuffer.writeTo(out);
+            }
+            out.flush();
+            return buffer.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Resolved address is written with its raw bytes, so reading it never does a name lookup
+     */
+    private static void writeAddress(DataOutputStream out, SocketAddress address) throws IOException {
+        if (address instanceof InetSocketAddress inetAddress && !inetAddress.isUnresolved()) {
+            out.writeByte(INET_ADDRESS);
+            var addressBytes = inetAddress.getAddress().getAddress();
+            out.writeByte(addressBytes.length);
+            out.write(addressBytes);
+            out.writeUTF(inetAddress.getHostString());
+            out.writeShort(inetAddress.getPort());
+        } else if (address instanceof InetSocketAddress inetAddress) {
+            out.writeByte(UNRESOLVED_ADDRESS);
+            out.writeUTF(inetAddress.getHostString());
+            out.writeShort(inetAddress.getPort());
+        } else {
+            out.writeByte(SERIALIZED_ADDRESS);
+            var buffer = new ByteArrayOutputStream();
+            try (var objectOut = new ObjectOutputStream(buffer)) {
+                objectOut.writeObject(address);
+            }
+            out.writeInt(buffer.size());
+            buffer.writeTo(out);
+        }
+    }
+
+    private static SocketAddress readAddress(DataInputStream in) throws IOException, ClassNotFoundException {
+        var type = in.readByte();
+        if (type == INET_ADDRESS) {
+            var addressBytes = new byte[in.readByte()];
+            in.readFully(addressBytes);
+            var host = in.readUTF();
+            return new InetSocketAddress(InetAddress.getByAddress(host, addressBytes), in.readUnsignedShort());
+        } else if (type == UNRESOLVED_ADDRESS) {
+            var host = in.readUTF();
+            return InetSocketAddress.createUnresolved(host, in.readUnsignedShort());
+        } else if (type != SERIALIZED_ADDRESS) {
+            throw new IOException("Unknown address type " + type);
+        }
+        var length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Serialized address length " + length + " exceeds the entry");
+        }
+        var addressBytes = new byte[length];
+        in.readFully(addressBytes);
+        try (var objectIn = new ObjectInputStream(new ByteArrayInputStream(addressBytes))) {
+            objectIn.setObjectInputFilter(ADDRESS_FILTER);
+            if (!(objectIn.readObject() instanceof SocketAddress address)) {
+                throw new IOException("Serialized address isn't a socket address");
+            }
+            return address;
+        }
+    }
+
+    public interface EntryResolver {
+
+        MemberList.MemberState resolve(long id);
+    }
+
+    public interface EntryFilter {
+
+        boolean accept(MemberName memberName, int incarnation, MemberList.MemberStateType stateType);
+    }
+}
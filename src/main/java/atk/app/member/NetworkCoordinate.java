@@ -0,0 +1,120 @@
+package atk.app.member;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Vivaldi network coordinate. Distance between two coordinates estimates round trip time between their members in
+ * seconds. Height models the latency of the access link that every path of a member goes through. Immutable class
+ */
+public class NetworkCoordinate implements Serializable {
+    private static final long serialVersionUID = 1L;
+    static final int DIMENSIONALITY = 8;
+    static final double MAXIMUM_ERROR = 1.5;
+    static final double MINIMUM_HEIGHT = 10.0e-6;
+    // tuning constants of the Vivaldi algorithm for error and coordinate adjustments
+    private static final double ERROR_ADJUSTMENT = 0.25;
+    private static final double COORDINATE_ADJUSTMENT = 0.25;
+    private static final double ZERO_THRESHOLD = 1.0e-6;
+
+    private final double[] vector;
+    private final double height;
+    // relative error of the coordinate, new coordinate has the maximum error
+    private final double error;
+
+    public NetworkCoordinate() {
+        this(new double[DIMENSIONALITY], MINIMUM_HEIGHT, MAXIMUM_ERROR);
+    }
+
+    NetworkCoordinate(double[] vector, double height, double error) {
+        this.vector = vector;
+        this.height = height;
+        this.error = error;
+    }
+
+    public double error() {
+        return error;
+    }
+
+    /**
+     * @return - estimated round trip time between members of the coordinates
+     */
+    public Duration estimateRtt(NetworkCoordinate other) {
+        return Duration.ofNanos((long) (distanceTo(other) * 1.0e9));
+    }
+
+    /**
+     * @param random - picks a direction if both coordinates are at the same point
+     * @return - coordinate moved toward or away from the other coordinate, so their distance is closer to the measured rtt
+     */
+    NetworkCoordinate update(NetworkCoordinate other, Duration rtt, Random random) {
+        double rttSeconds = Math.max(rtt.toNanos() / 1.0e9, ZERO_THRESHOLD);
+        double distance = distanceTo(other);
+        double wrongness = Math.abs(distance - rttSeconds) / rttSeconds;
+        double totalError = Math.max(error + other.error, ZERO_THRESHOLD);
+        // a coordinate with a small error moves little toward a coordinate with a big error
+        double weight = error / totalError;
+        double newError = Math.min(ERROR_ADJUSTMENT * weight * wrongness + error * (1.0 - ERROR_ADJUSTMENT * weight), MAXIMUM_ERROR);
+        double force = COORDINATE_ADJUSTMENT * weight * (rttSeconds - distance);
+
+        var difference = new double[DIMENSIONALITY];
+        for (int i = 0; i < DIMENSIONALITY; i++) {
+            difference[i] = vector[i] - other.vector[i];
+        }
+        double magnitude = magnitude(difference);
+        var unitVector = magnitude > ZERO_THRESHOLD ? scale(difference, 1.0 / magnitude) : randomUnitVector(random);
+        var newVector = vector.clone();
+        for (int i = 0; i < DIMENSIONALITY; i++) {
+            newVector[i] += unitVector[i] * force;
+        }
+        double newHeight = height;
+        if (magnitude > ZERO_THRESHOLD) {
+            newHeight = (height + other.height) * force / magnitude + height;
+        }
+        return new NetworkCoordinate(newVector, Math.max(newHeight, MINIMUM_HEIGHT), newError);
+    }
+
+    private double distanceTo(NetworkCoordinate other) {
+        var difference = new double[DIMENSIONALITY];
+        for (int i = 0; i < DIMENSIONALITY; i++) {
+            difference[i] = vector[i] - other.vector[i];
+        }
+        return magnitude(difference) + height + other.height;
+    }
+
+    private static double magnitude(double[] vector) {
+        double sum = 0;
+        for (double value : vector) {
+            sum += value * value;
+        }
+        return Math.sqrt(sum);
+    }
+
+    private static double[] scale(double[] vector, double factor) {
+        var result = new double[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * factor;
+        }
+        return result;
+    }
+
+    private static double[] randomUnitVector(Random random) {
+        var vector = new double[DIMENSIONALITY];
+        for (int i = 0; i < DIMENSIONALITY; i++) {
+            vector[i] = random.nextDouble() - 0.5;
+        }
+        double magnitude = magnitude(vector);
+        return magnitude > ZERO_THRESHOLD ? scale(vector, 1.0 / magnitude) : randomUnitVector(random);
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkCoordinate{" +
+                "vector=" + Arrays.toString(vector) +
+                ", height=" + height +
+                ", error=" + error +
+                '}';
+    }
+}
@@ -0,0 +1,64 @@
+package atk.app.member;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coordinate of this member and the last known coordinates of the other members. This member's coordinate is moved
+ * on every measured round trip of a direct ping, coordinates of others are learned from their acks. Thread safe class
+ */
+public class NetworkCoordinates {
+    private final MemberName myName;
+    private final Random random = new Random();
+    private final Map<MemberName, NetworkCoordinate> othersCoordinates = new ConcurrentHashMap<>();
+    private volatile NetworkCoordinate myCoordinate = new NetworkCoordinate();
+
+    public NetworkCoordinates(MemberName myName) {
+        this.myName = myName;
+    }
+
+    public NetworkCoordinate getMyCoordinate() {
+        return myCoordinate;
+    }
+
+    /**
+     * @param rtt - measured round trip time of a direct request to the member
+     */
+    public synchronized void update(MemberName memberName, NetworkCoordinate memberCoordinate, Duration rtt) {
+        othersCoordinates.put(memberName, memberCoordinate);
+        myCoordinate = myCoordinate.update(memberCoordinate, rtt, random);
+    }
+
+    /**
+     * @return - empty if a coordinate of any member isn't known yet
+     */
+    public Optional<Duration> estimateRtt(MemberName from, MemberName to) {
+        var fromCoordinate = coordinateOf(from);
+        var toCoordinate = coordinateOf(to);
+        if (fromCoordinate == null || toCoordinate == null) {
+            return Optional.empty();
+        }
+        return Optional.of(fromCoordinate.estimateRtt(toCoordinate));
+    }
+
+    /**
+     * @return - members sorted by estimated round trip time from this member. Members without a known coordinate are the last
+     */
+    public List<MemberList.MemberState> sortByProximity(List<MemberList.MemberState> memberStates) {
+        var me = myCoordinate;
+        Comparator<MemberList.MemberState> byRtt = Comparator.comparing(memberState -> {
+            var coordinate = coordinateOf(memberState.memberName);
+            return coordinate == null ? Double.MAX_VALUE : me.estimateRtt(coordinate).toNanos();
+        });
+        return memberStates.stream().sorted(byRtt).toList();
+    }
+
+    private NetworkCoordinate coordinateOf(MemberName memberName) {
+        return myName.equals(memberName) ? myCoordinate : othersCoordinates.get(memberName);
+    }
+}
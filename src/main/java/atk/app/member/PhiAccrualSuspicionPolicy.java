@@ -0,0 +1,112 @@
+package atk.app.member;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Phi accrual failure detector (Hayashibara et al.). Intervals between acks of a member are assumed to be normally
+ * distributed, phi = -log10(probability that the next ack comes later than now). Suspicion level is phi divided by
+ * the threshold. Member without enough history is suspected after the first failed probe like with the binary policy,
+ * its suspicion level is 0. History of a dead or left member is dropped
+ */
+class PhiAccrualSuspicionPolicy implements SuspicionPolicy {
+    private static final int MINIMUM_INTERVALS = 2;
+    private final double phiThreshold;
+    private final int historySize;
+    private final double minimumStandardDeviationMillis;
+    private final double acceptablePauseMillis;
+    private final Map<MemberName, AckHistory> histories = new ConcurrentHashMap<>();
+
+    PhiAccrualSuspicionPolicy(double phiThreshold, int historySize, Duration minimumStandardDeviation, Duration acceptablePause) {
+        this.phiThreshold = phiThreshold;
+        this.historySize = historySize;
+        this.minimumStandardDeviationMillis = minimumStandardDeviation.toMillis();
+        this.acceptablePauseMillis = acceptablePause.toMillis();
+    }
+
+    @Override
+    public void onAck(MemberName memberName, Instant ackTime) {
+        histories.computeIfAbsent(memberName, name -> new AckHistory()).add(ackTime, historySize);
+    }
+
+    @Override
+    public void onRemoved(MemberName memberName) {
+        histories.remove(memberName);
+    }
+
+    @Override
+    public double suspicionLevel(MemberName memberName, Instant now) {
+        var history = histories.get(memberName);
+        if (history == null) {
+            return 0;
+        }
+        return phi(history, now) / phiThreshold;
+    }
+
+    /**
+     * Member without enough history is suspected like with the binary policy, the level doesn't say anything about it
+     */
+    @Override
+    public boolean shouldSuspect(MemberName memberName, Instant now) {
+        var history = histories.get(memberName);
+        if (history == null || !history.hasEnoughIntervals()) {
+            return true;
+        }
+        return suspicionLevel(memberName, now) >= 1.0;
+    }
+
+    double phi(AckHistory history, Instant now) {
+        synchronized (history) {
+            if (!history.hasEnoughIntervals()) {
+                return 0;
+            }
+            double mean = history.sumMillis / history.intervalsMillis.size();
+            double variance = history.squaredSumMillis / history.intervalsMillis.size() - mean * mean;
+            double standardDeviation = Math.max(Math.sqrt(Math.max(variance, 0)), minimumStandardDeviationMillis);
+            double sinceLastAck = Duration.between(history.lastAck, now).toMillis();
+            return phi(sinceLastAck, mean + acceptablePauseMillis, standardDeviation);
+        }
+    }
+
+    /**
+     * Logistic approximation of the normal cumulative distribution, it's accurate enough and doesn't overflow
+     */
+    private static double phi(double sinceLastAck, double mean, double standardDeviation) {
+        double y = (sinceLastAck - mean) / standardDeviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (sinceLastAck > mean) {
+            return -Math.log10(e / (1.0 + e));
+        }
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    static class AckHistory {
+        private final Deque<Double> intervalsMillis = new ArrayDeque<>();
+        private double sumMillis;
+        private double squaredSumMillis;
+        private Instant lastAck;
+
+        synchronized void add(Instant ackTime, int historySize) {
+            if (lastAck != null) {
+                double interval = Duration.between(lastAck, ackTime).toMillis();
+                intervalsMillis.addLast(interval);
+                sumMillis += interval;
+                squaredSumMillis += interval * interval;
+                if (intervalsMillis.size() > historySize) {
+                    double removed = intervalsMillis.removeFirst();
+                    sumMillis -= removed;
+                    squaredSumMillis -= removed * removed;
+                }
+            }
+            lastAck = ackTime;
+        }
+
+        synchronized boolean hasEnoughIntervals() {
+            return intervalsMillis.size() >= MINIMUM_INTERVALS;
+        }
+    }
+}
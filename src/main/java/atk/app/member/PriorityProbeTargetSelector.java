@@ -0,0 +1,70 @@
+package atk.app.member;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Interleaves round-robin probes with extra probes of suspected and newly joined members. A suspicion is confirmed or
+ * refuted faster, while extra probes are limited per round, so the round-robin coverage is kept
+ */
+class PriorityProbeTargetSelector implements ProbeTargetSelector {
+    private final List<MemberList.MemberState> probedMembers;
+    private final MemberList.RoundRobinStrategy roundRobinStrategy;
+    private final int extraProbesPerRound;
+    // members that deserve an extra probe in the order of their changes
+    private final Set<MemberName> prioritizedMembers = new LinkedHashSet<>();
+    private int regularProbesInRound = 0;
+    private int extraProbesInRound = 0;
+    private boolean lastProbeWasExtra = true;
+
+    PriorityProbeTargetSelector(List<MemberList.MemberState> probedMembers, int extraProbesPerRound) {
+        this.probedMembers = probedMembers;
+        this.roundRobinStrategy = new MemberList.RoundRobinStrategy(probedMembers);
+        this.extraProbesPerRound = extraProbesPerRound;
+    }
+
+    @Override
+    public MemberList.MemberState nextMember() {
+        if (regularProbesInRound >= probedMembers.size()) {
+            regularProbesInRound = 0;
+            extraProbesInRound = 0;
+        }
+        // extra probe never follows another one, so regular probes progress at least every second period
+        if (!lastProbeWasExtra && extraProbesInRound < extraProbesPerRound) {
+            var extraMember = pollPrioritizedMember();
+            if (extraMember != null) {
+                extraProbesInRound++;
+                lastProbeWasExtra = true;
+                return extraMember;
+            }
+        }
+        regularProbesInRound++;
+        lastProbeWasExtra = false;
+        return roundRobinStrategy.nextMember();
+    }
+
+    @Override
+    public void onMemberStateChanged(MemberList.MemberState previousState, MemberList.MemberState newState) {
+        if (previousState == null || newState.stateType == MemberList.MemberStateType.SUSPECTED) {
+            prioritizedMembers.add(newState.memberName);
+        } else {
+            prioritizedMembers.remove(newState.memberName);
+        }
+    }
+
+    private MemberList.MemberState pollPrioritizedMember() {
+        var iterator = prioritizedMembers.iterator();
+        while (iterator.hasNext()) {
+            var memberName = iterator.next();
+            iterator.remove();
+            // member could be removed from probed members after it was prioritized
+            for (MemberList.MemberState memberState : probedMembers) {
+                if (memberState.memberName.equals(memberName)) {
+                    return memberState;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -1,7 +1,9 @@
 package atk.app.member;
 
+import atk.app.lifecycle.LifecycleStates;
 import atk.app.lifecycle.ThreadSafeLifecycle;
 import atk.app.network.NetworkClient;
+import atk.app.network.protocol.AckResponse;
 import atk.app.network.protocol.IndirectPingRequest;
 import atk.app.network.protocol.NetworkResponseHandler;
 import atk.app.network.protocol.PingRequest;
@@ -10,15 +12,21 @@ import atk.app.util.ExceptionUtil;
 import atk.app.util.FutureUtil;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -29,6 +37,17 @@ public class ProbeRunner extends ThreadSafeLifecycle {
     private static final Logger logger = LoggerFactory.getLogger(ProbeRunner.class);
     private final MemberList memberList;
     private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    // runs steps of a probe, a step never waits for a response
+    private final Executor probeExecutor;
+    private final AtomicBoolean probeInProgress = new AtomicBoolean();
+    // requests of the current probe, they are cancelled on stop
+    private final Set<CompletableFuture<?>> inFlightRequests = ConcurrentHashMap.newKeySet();
+    private final IndirectPingHelpers indirectPingHelpers = new IndirectPingHelpers(new Random());
+    // null if round trips of pings aren't used
+    private volatile NetworkCoordinates networkCoordinates;
+    private final ProbeTimeouts probeTimeouts;
+    private volatile SuspicionPolicy suspicionPolicy = SuspicionPolicy.binary();
     private final Duration probePeriod;
     private final Duration maximumRequestTimeout;
     private final NetworkClient networkClient;
@@ -46,21 +65,70 @@ public class ProbeRunner extends ThreadSafeLifecycle {
                        Duration probePeriod,
                        Duration maximumRequestTimeout,
                        int indirectPingTargets) {
+        this(responseHandler, networkClient, memberList, suspectTimers, lifecycleExecutor, probePeriod, maximumRequestTimeout,
+                indirectPingTargets, new ProbeTimeouts(maximumRequestTimeout, maximumRequestTimeout));
+    }
+
+    /**
+     * @param probeTimeouts - timeouts of direct pings, time left in the probe period is used by indirect pings
+     */
+    public ProbeRunner(NetworkResponseHandler responseHandler,
+                       NetworkClient networkClient,
+                       MemberList memberList,
+                       SuspectTimers suspectTimers,
+                       ExecutorService lifecycleExecutor,
+                       Duration probePeriod,
+                       Duration maximumRequestTimeout,
+                       int indirectPingTargets,
+                       ProbeTimeouts probeTimeouts) {
         super(lifecycleExecutor);
         this.responseHandler = responseHandler;
         this.networkClient = networkClient;
         this.myName = memberList.getMyName();
         this.memberList = memberList;
         this.executor = Executors.newScheduledThreadPool(1);
+        this.ownsExecutor = true;
+        this.probeExecutor = executor;
+        this.probePeriod = probePeriod;
+        this.maximumRequestTimeout = maximumRequestTimeout;
+        this.suspectTimers = suspectTimers;
+        this.indirectPingTargets = indirectPingTargets;
+        this.probeTimeouts = probeTimeouts;
+    }
+
+    /**
+     * @param timer         - shared timer that only triggers probes. The client of this class is responsible for shutdowning it
+     * @param probeExecutor - runs steps of probes, e.g. the member executor. Steps don't wait for responses
+     */
+    public ProbeRunner(NetworkResponseHandler responseHandler,
+                       NetworkClient networkClient,
+                       MemberList memberList,
+                       SuspectTimers suspectTimers,
+                       ExecutorService lifecycleExecutor,
+                       ScheduledExecutorService timer,
+                       Executor probeExecutor,
+                       Duration probePeriod,
+                       Duration maximumRequestTimeout,
+                       int indirectPingTargets,
+                       ProbeTimeouts probeTimeouts) {
+        super(lifecycleExecutor);
+        this.responseHandler = responseHandler;
+        this.networkClient = networkClient;
+        this.myName = memberList.getMyName();
+        this.memberList = memberList;
+        this.executor = timer;
+        this.ownsExecutor = false;
+        this.probeExecutor = probeExecutor;
         this.probePeriod = probePeriod;
         this.maximumRequestTimeout = maximumRequestTimeout;
         this.suspectTimers = suspectTimers;
         this.indirectPingTargets = indirectPingTargets;
+        this.probeTimeouts = probeTimeouts;
     }
 
     @Override
     protected void start0() {
-        this.probeJobFuture = executor.scheduleAtFixedRate(this::probeARandomMember, 0, probePeriod.toMillis(), TimeUnit.MILLISECONDS);
+        this.probeJobFuture = executor.scheduleAtFixedRate(this::handOverProbe, 0, probePeriod.toMillis(), TimeUnit.MILLISECONDS);
         logger.debug("Start probe runner for {}", myName);
     }
 
@@ -71,66 +139,159 @@ public class ProbeRunner extends ThreadSafeLifecycle {
             logger.debug("Cancel probe runner job for {}", myName);
             ExceptionUtil.ignoreThrownExceptions(() -> Thread.sleep(100), logger);
         }
+        inFlightRequests.forEach(request -> request.cancel(false));
     }
 
     @Override
     protected void close0() {
-        start0();
-        ConcurrencyUtil.shutdownExecutor(executor);
+        if (ownsExecutor) {
+            ConcurrencyUtil.shutdownExecutor(executor);
+        }
     }
 
-    //TODO - strategy for picking probe member should be extracted from separate class
-    private void probeARandomMember() {
+    /**
+     * Runs on the timer, so it never waits. If the previous probe isn't finished the tick is skipped like
+     * a delayed tick of a single threaded timer
+     */
+    private void handOverProbe() {
+        if (!probeInProgress.compareAndSet(false, true)) {
+            logger.debug("{} previous probe is still in progress, skip the tick", myName);
+            return;
+        }
+        try {
+            CompletableFuture.supplyAsync(this::probeARandomMember, probeExecutor)
+                    .thenCompose(probe -> probe)
+                    .whenComplete((unused, throwable) -> {
+                        if (throwable != null) {
+                            logger.error("{} probe failed", myName, throwable);
+                        }
+                        probeInProgress.set(false);
+                    });
+        } catch (RejectedExecutionException ex) {
+            probeInProgress.set(false);
+            logger.warn("{} probe executor is busy, skip the tick", myName);
+        }
+    }
+
+    private CompletableFuture<Void> probeARandomMember() {
         var probeDeadLine = Instant.now().plus(probePeriod);
-        var localMemberStates = memberList.getMemberStateWithoutMe();
+        //dead members are neither probed nor asked to probe
+        var localMemberStates = memberList.getLiveMemberStatesWithoutMe();
         if (localMemberStates.isEmpty()) {
-            return;
+            return CompletableFuture.completedFuture(null);
         }
         var probeTarget = memberList.nextMemberToPing();
+        if (probeTarget == null) {
+            return CompletableFuture.completedFuture(null);
+        }
         logger.debug("{} Start probing {}", myName, probeTarget.memberName);
-        if (!sendPingRequestToTargetMember(memberList.getMemberStates(), probeTarget)) {
-            int numberOfIndirectPingTargets = Math.min(this.indirectPingTargets, localMemberStates.size() - 1);
-            var indirectPingTargets = localMemberStates.stream()
-                    .filter(memberState -> !memberState.memberName.equals(probeTarget.memberName))
-                    .limit(numberOfIndirectPingTargets)
-                    .collect(Collectors.toSet());
-            var now = Instant.now();
-            if (!sendIndirectPingToRandomMembers(probeTarget, indirectPingTargets, Duration.between(now, probeDeadLine))) {
+        return sendPingRequestToTargetMember(memberList.getMemberStatesSnapshot(), probeTarget)
+                .thenComposeAsync(acked -> {
+                    if (acked) {
+                        logger.debug("{} successfully ping {}.", myName, probeTarget.memberName);
+                        return CompletableFuture.completedFuture(true);
+                    }
+                    var indirectPingTargets = indirectPingHelpers.select(localMemberStates, probeTarget, this.indirectPingTargets);
+                    return sendIndirectPingToRandomMembers(probeTarget, indirectPingTargets, Duration.between(Instant.now(), probeDeadLine));
+                }, probeExecutor)
+                .thenAcceptAsync(acked -> onProbeResult(probeTarget, acked), probeExecutor);
+    }
+
+    private void onProbeResult(MemberList.MemberState probeTarget, boolean acked) {
+        //a probe that outlived stop doesn't change member states
+        if (!hasState(LifecycleStates.STARTED)) {
+            return;
+        }
+        if (!acked) {
+            if (suspicionPolicy.shouldSuspect(probeTarget.memberName, Instant.now())) {
                 suspectMember(probeTarget);
-                return;
             } else {
-                logger.debug("{} successfully send indirect ping to {}", probeTarget.memberName, probeTarget.memberName);
+                logger.debug("{} didn't reach {}, but it isn't suspected yet", myName, probeTarget.memberName);
             }
-        } else {
-            logger.debug("{} successfully ping {}.", myName, probeTarget.memberName);
+            return;
         }
+        suspicionPolicy.onAck(probeTarget.memberName, Instant.now());
         unSuspectMember(probeTarget);
     }
 
-    private boolean sendPingRequestToTargetMember(List<MemberList.MemberState> localMemberStates, MemberList.MemberState probeTarget) {
-        var networkResponse = FutureUtil.getIfExists(networkClient.send(new PingRequest(localMemberStates), probeTarget.bindAddress, maximumRequestTimeout));
-        if (networkResponse.isPresent()) {
-            responseHandler.processNetworkResponse(networkResponse.get());
+    /**
+     * @param suspicionPolicy - decides whether a member that didn't answer a probe is suspected. Binary by default
+     */
+    public void setSuspicionPolicy(SuspicionPolicy suspicionPolicy) {
+        this.suspicionPolicy = suspicionPolicy;
+    }
+
+    /**
+     * @param networkCoordinates - updated with round trip times of direct pings
+     */
+    public void setNetworkCoordinates(NetworkCoordinates networkCoordinates) {
+        this.networkCoordinates = networkCoordinates;
+    }
+
+    private CompletableFuture<Boolean> sendPingRequestToTargetMember(List<MemberList.MemberState> localMemberStates, MemberList.MemberState probeTarget) {
+        var timeout = probeTimeouts.timeoutOf(probeTarget.memberName);
+        var ping = track(networkClient.sendTimed(new PingRequest(localMemberStates), probeTarget.bindAddress, timeout));
+        return ping.handleAsync((timedResponse, throwable) -> {
+            if (throwable != null) {
+                logger.debug("{} didn't receive ack from {} in {}", myName, probeTarget.memberName, timeout);
+                probeTimeouts.onTimeout(probeTarget.memberName);
+                return false;
+            }
+            // round trip on the wire, connect and scheduling of the probe aren't included
+            var rtt = timedResponse.roundTripTime();
+            var networkResponse = timedResponse.response();
+            probeTimeouts.onRtt(probeTarget.memberName, rtt);
+            var coordinates = networkCoordinates;
+            if (coordinates != null && networkResponse instanceof AckResponse ack && ack.coordinate() != null) {
+                coordinates.update(probeTarget.memberName, ack.coordinate(), rtt);
+            }
+            responseHandler.processNetworkResponse(networkResponse);
             return true;
-        }
-        return false;
+        }, probeExecutor);
     }
 
-    private boolean sendIndirectPingToRandomMembers(MemberList.MemberState probeTarget, Set<MemberList.MemberState> indirectPingTargets, Duration probeDeadLine) {
+    private CompletableFuture<Boolean> sendIndirectPingToRandomMembers(MemberList.MemberState probeTarget, List<MemberList.MemberState> indirectPingTargets, Duration probeDeadLine) {
         logger.debug("{} Pick {} for indirect probe of {}", myName, indirectPingTargets.stream().map(m -> m.memberName).collect(Collectors.toList()), probeTarget.memberName);
         if (indirectPingTargets.isEmpty()) {
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         var targetsForIndirectPing = indirectPingTargets.stream().map(member -> member.bindAddress).collect(Collectors.toList());
-        var requestFeatures = networkClient.send(new IndirectPingRequest(memberList.getMemberStates(), probeTarget.bindAddress), targetsForIndirectPing, probeDeadLine);
         //Ask K members to send ping to the probe member
-        var responses = FutureUtil.getDoneResponsesThatCompleted(requestFeatures, probeDeadLine);
-        if (!responses.isEmpty()) {
-            logger.debug("{} Received {} responses", myName, responses.size());
-            responses.forEach(feature -> responseHandler.processNetworkResponse(FutureUtil.get(feature)));
+        var requestFeatures = networkClient.send(new IndirectPingRequest(memberList.getMemberStatesSnapshot(), probeTarget.bindAddress), targetsForIndirectPing, probeDeadLine);
+        requestFeatures.forEach(this::track);
+        return FutureUtil.firstSuccess(requestFeatures, probeDeadLine).thenApplyAsync(response -> {
+            //the other helpers aren't waited for, their connections are released at once
+            requestFeatures.forEach(feature -> feature.cancel(false));
+            if (response.isEmpty()) {
+                return false;
+            }
+            logger.debug("{} Received indirect ack of {}", myName, probeTarget.memberName);
+            responseHandler.processNetworkResponse(response.get());
             return true;
-        }
-        return false;
+        }, probeExecutor);
+    }
+
+    private <T> CompletableFuture<T> track(CompletableFuture<T> request) {
+        inFlightRequests.add(request);
+        request.whenComplete((response, throwable) -> inFlightRequests.remove(request));
+        return request;
+    }
+
+    /**
+     * Pushes my refuted state to random members without waiting for the next probe period,
+     * so a false suspicion is overridden before the suspect deadline expires
+     */
+    public void disseminateRefutation(MemberList.MemberState myRefutedState) {
+        var liveMembers = memberList.getLiveMemberStatesWithoutMe();
+        Collections.shuffle(liveMembers);
+        var targets = liveMembers.stream()
+                .limit(Math.max(1, indirectPingTargets))
+                .map(memberState -> memberState.bindAddress)
+                .collect(Collectors.toList());
+        logger.debug("{} disseminates refutation with incarnation {} to {}", myName, myRefutedState.incarnation, targets);
+        networkClient.send(new PingRequest(memberList.getMemberStatesSnapshot(), true), targets, maximumRequestTimeout)
+                .forEach(future -> future.whenComplete((networkResponse, throwable) ->
+                        responseHandler.processNetworkResponse(networkResponse, throwable, "Wasn't able to disseminate refutation of " + myName)));
     }
 
     public void suspectMember(MemberList.MemberState probeTarget) {
@@ -0,0 +1,48 @@
+package atk.app.member;
+
+import java.util.List;
+
+/**
+ * Picks the next member to probe. Every method is called under the lock of the probed members list, so an implementation
+ * doesn't need to be thread safe, but it shouldn't block
+ */
+public interface ProbeTargetSelector {
+
+    /**
+     * @return - next member to probe. It's called only when the probed members list isn't empty
+     */
+    MemberList.MemberState nextMember();
+
+    /**
+     * Called when a member is added to the probed members or changes its state there. Dead and left members are
+     * removed from the probed members without a call
+     *
+     * @param previousState - null if the member has just joined
+     */
+    default void onMemberStateChanged(MemberList.MemberState previousState, MemberList.MemberState newState) {
+    }
+
+    interface Factory {
+        /**
+         * @param probedMembers - alive and suspected members. The list is owned and modified by the member list
+         */
+        ProbeTargetSelector create(List<MemberList.MemberState> probedMembers);
+    }
+
+    /**
+     * Every member is probed once per round in a random order
+     */
+    static Factory roundRobin() {
+        return MemberList.RoundRobinStrategy::new;
+    }
+
+    /**
+     * Round-robin that additionally probes suspected and newly joined members
+     *
+     * @param extraProbesPerRound - maximum number of extra probes in one round, so every member is still probed
+     *                            at least once in (number of members + extraProbesPerRound) probes
+     */
+    static Factory prioritizingChangedMembers(int extraProbesPerRound) {
+        return probedMembers -> new PriorityProbeTargetSelector(probedMembers, extraProbesPerRound);
+    }
+}
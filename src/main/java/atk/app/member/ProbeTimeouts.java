@@ -0,0 +1,67 @@
+package atk.app.member;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timeout of a direct ping for every probe target, computed from its observed round trip times like a TCP
+ * retransmission timeout (RFC 6298): smoothed rtt plus four deviations. A timeout doubles on every missed ping
+ * until the next successful one. Timeouts are clamped, a target without samples gets the maximum timeout. Thread safe class
+ */
+public class ProbeTimeouts {
+    private static final double RTT_GAIN = 1.0 / 8;
+    private static final double DEVIATION_GAIN = 1.0 / 4;
+    private static final int DEVIATIONS = 4;
+    private final Duration minimumTimeout;
+    private final Duration maximumTimeout;
+    private final Map<MemberName, RttEstimate> estimates = new ConcurrentHashMap<>();
+
+    /**
+     * @param minimumTimeout - lower bound of a timeout, it covers scheduling jitter of the target
+     * @param maximumTimeout - upper bound of a timeout and the timeout of a target without samples
+     */
+    public ProbeTimeouts(Duration minimumTimeout, Duration maximumTimeout) {
+        if (minimumTimeout.compareTo(maximumTimeout) > 0) {
+            throw new IllegalArgumentException("Minimum timeout " + minimumTimeout + " is bigger than maximum timeout " + maximumTimeout);
+        }
+        this.minimumTimeout = minimumTimeout;
+        this.maximumTimeout = maximumTimeout;
+    }
+
+    public Duration timeoutOf(MemberName memberName) {
+        var estimate = estimates.get(memberName);
+        if (estimate == null) {
+            return maximumTimeout;
+        }
+        double timeoutNanos = (estimate.smoothedRttNanos + DEVIATIONS * estimate.rttDeviationNanos) * estimate.backoff;
+        return clamp(Duration.ofNanos((long) Math.min(timeoutNanos, Long.MAX_VALUE)));
+    }
+
+    public void onRtt(MemberName memberName, Duration rtt) {
+        double rttNanos = rtt.toNanos();
+        estimates.compute(memberName, (name, estimate) -> {
+            if (estimate == null) {
+                return new RttEstimate(rttNanos, rttNanos / 2, 1);
+            }
+            var deviation = (1 - DEVIATION_GAIN) * estimate.rttDeviationNanos + DEVIATION_GAIN * Math.abs(estimate.smoothedRttNanos - rttNanos);
+            var smoothedRtt = (1 - RTT_GAIN) * estimate.smoothedRttNanos + RTT_GAIN * rttNanos;
+            return new RttEstimate(smoothedRtt, deviation, 1);
+        });
+    }
+
+    public void onTimeout(MemberName memberName) {
+        estimates.computeIfPresent(memberName, (name, estimate) ->
+                new RttEstimate(estimate.smoothedRttNanos, estimate.rttDeviationNanos, Math.min(estimate.backoff * 2, 1 << 16)));
+    }
+
+    private Duration clamp(Duration timeout) {
+        if (timeout.compareTo(minimumTimeout) < 0) {
+            return minimumTimeout;
+        }
+        return timeout.compareTo(maximumTimeout) > 0 ? maximumTimeout : timeout;
+    }
+
+    private record RttEstimate(double smoothedRttNanos, double rttDeviationNanos, int backoff) {
+    }
+}
@@ -9,7 +9,9 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -17,6 +19,8 @@ import java.util.concurrent.TimeUnit;
 
 public class SuspectTimers extends ThreadSafeLifecycle {
     private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Executor memberExecutor;
     private final Map<MemberName, ScheduledFuture<?>> timersMap = new ConcurrentHashMap<>();
     private final Duration suspectedMemberDeadline;
     private final MemberList memberList;
@@ -25,6 +29,22 @@ public class SuspectTimers extends ThreadSafeLifecycle {
         super(lifecycleExecutor);
         this.memberList = memberList;
         this.executor = Executors.newScheduledThreadPool(1);
+        this.ownsExecutor = true;
+        this.memberExecutor = Runnable::run;
+        this.suspectedMemberDeadline = suspectedMemberDeadline;
+    }
+
+    /**
+     * @param timer          - shared timer. The client of this class is responsible for shutdowning it
+     * @param memberExecutor - marks members as dead, so the shared timer is never busy
+     */
+    public SuspectTimers(ExecutorService lifecycleExecutor, ScheduledExecutorService timer, Executor memberExecutor,
+                         MemberList memberList, Duration suspectedMemberDeadline) {
+        super(lifecycleExecutor);
+        this.memberList = memberList;
+        this.executor = timer;
+        this.ownsExecutor = false;
+        this.memberExecutor = memberExecutor;
         this.suspectedMemberDeadline = suspectedMemberDeadline;
     }
 
@@ -43,7 +63,9 @@ public class SuspectTimers extends ThreadSafeLifecycle {
 
     @Override
     protected void close0() {
-        ConcurrencyUtil.shutdownExecutor(executor);
+        if (ownsExecutor) {
+            ConcurrencyUtil.shutdownExecutor(executor);
+        }
     }
 
 
@@ -56,7 +78,7 @@ public class SuspectTimers extends ThreadSafeLifecycle {
         }
         logger.debug("Start suspected timer for {}", memberName);
         // member will be marked as dead if suspectedMemberDeadline is violated
-        ScheduledFuture<?> future = executor.schedule(() -> markMemberAsDead(memberName), suspectedMemberDeadline.toMillis(),
+        ScheduledFuture<?> future = executor.schedule(() -> onDeadline(memberName), suspectedMemberDeadline.toMillis(),
                 TimeUnit.MILLISECONDS);
         timersMap.put(memberName, future);
     }
@@ -66,14 +88,42 @@ public class SuspectTimers extends ThreadSafeLifecycle {
 
         ScheduledFuture<?> future = timersMap.remove(memberName);
         if (future == null) {
-            logger.warn("There is not time related to {}", memberName);
+            // the timer is already stopped when the member list learned that the member is alive
+            logger.debug("There is not time related to {}", memberName);
             return;
         }
         logger.debug("Stop suspected timer for {}", memberName);
         future.cancel(false);
     }
 
+    /**
+     * Suspicion ends when the member refutes it, also when the refutation is learned from another member. The timer
+     * is cancelled, so a new suspicion of the member gets its own deadline
+     */
+    public void onMemberStateChanged(MemberList.MemberState memberState) {
+        if (memberState.isSuspected()) {
+            return;
+        }
+        var future = timersMap.remove(memberState.memberName);
+        if (future != null) {
+            logger.debug("Stop suspected timer for {}, it's {} now", memberState.memberName, memberState.stateType);
+            future.cancel(false);
+        }
+    }
+
+    private void onDeadline(MemberName memberName) {
+        try {
+            memberExecutor.execute(() -> markMemberAsDead(memberName));
+        } catch (RejectedExecutionException e) {
+            // the deadline isn't lost, the member is marked as dead on the timer thread
+            logger.warn("Member executor rejected the deadline of {}, mark it as dead inline", memberName, e);
+            markMemberAsDead(memberName);
+        }
+    }
+
     private void markMemberAsDead(MemberName memberName) {
+        // member can be suspected again if it refutes the suspicion
+        timersMap.remove(memberName);
         logger.debug("Attempt to mark {} as dead", memberName);
         if (memberList.makeMemberDead(memberName)) {
             logger.debug("{} is marked as dead", memberName);
@@ -0,0 +1,60 @@
+package atk.app.member;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Decides whether a member that didn't answer a probe becomes suspected. Suspected members go through the usual
+ * transitions of the member list and suspect timers
+ */
+public interface SuspicionPolicy {
+
+    /**
+     * Called when a member answers a direct or an indirect ping
+     */
+    void onAck(MemberName memberName, Instant ackTime);
+
+    /**
+     * Called when a member is dead or left, the policy doesn't need to keep anything about it
+     */
+    default void onRemoved(MemberName memberName) {
+    }
+
+    /**
+     * @return - confidence that the member failed. Member is suspected after a failed probe when the level reaches 1
+     */
+    double suspicionLevel(MemberName memberName, Instant now);
+
+    /**
+     * Called after a probe of the member failed
+     */
+    default boolean shouldSuspect(MemberName memberName, Instant now) {
+        return suspicionLevel(memberName, now) >= 1.0;
+    }
+
+    /**
+     * Member is suspected after the first failed probe
+     */
+    static SuspicionPolicy binary() {
+        return new SuspicionPolicy() {
+            @Override
+            public void onAck(MemberName memberName, Instant ackTime) {
+            }
+
+            @Override
+            public double suspicionLevel(MemberName memberName, Instant now) {
+                return 1.0;
+            }
+        };
+    }
+
+    /**
+     * @param phiThreshold             - phi at which a member is suspected, 8 means that the probability of a mistake is 1e-8
+     * @param historySize              - number of ack inter-arrival intervals a member's distribution is estimated from
+     * @param minimumStandardDeviation - lower bound of the deviation, so perfectly regular acks don't make phi jump
+     * @param acceptablePause          - added to the mean interval, it tolerates occasional pauses like GC
+     */
+    static SuspicionPolicy phiAccrual(double phiThreshold, int historySize, Duration minimumStandardDeviation, Duration acceptablePause) {
+        return new PhiAccrualSuspicionPolicy(phiThreshold, historySize, minimumStandardDeviation, acceptablePause);
+    }
+}
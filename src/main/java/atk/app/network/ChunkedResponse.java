@@ -0,0 +1,10 @@
+package atk.app.network;
+
+/**
+ * Response which is streamed as a sequence of chunks. Every chunk except the last one is handed to the chunk consumer
+ * as soon as it arrives, the last chunk completes the request
+ */
+public interface ChunkedResponse extends NetworkResponse {
+
+    boolean lastChunk();
+}
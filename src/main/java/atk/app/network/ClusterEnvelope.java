@@ -0,0 +1,13 @@
+package atk.app.network;
+
+import java.io.Serializable;
+
+/**
+ * Wraps a request or a response of one logical cluster, so many clusters can share one server port
+ *
+ * @param clusterId - id of the cluster that sends or receives the message
+ * @param message   - wrapped {@link NetworkRequest} or {@link NetworkResponse}
+ */
+public record ClusterEnvelope(String clusterId, Serializable message) implements Serializable {
+
+}
@@ -0,0 +1,13 @@
+package atk.app.network;
+
+import java.io.Serializable;
+
+/**
+ * Wraps a message that is compressed before it's framed. Only bulk messages are compressed, so probes and acks
+ * don't pay for it
+ *
+ * @param deflatedMessage - message encoded in the frame format and compressed with deflate
+ */
+public record CompressedEnvelope(byte[] deflatedMessage) implements Serializable {
+
+}
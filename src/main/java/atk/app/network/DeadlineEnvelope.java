@@ -0,0 +1,14 @@
+package atk.app.network;
+
+import java.io.Serializable;
+
+/**
+ * Wraps a request with the time that its sender waits for the response. The time is relative, because clocks
+ * of members aren't synchronized
+ *
+ * @param request       - wrapped request
+ * @param timeoutMillis - time that the sender waits for the response since the request was sent
+ */
+public record DeadlineEnvelope(NetworkRequest request, long timeoutMillis) implements Serializable {
+
+}
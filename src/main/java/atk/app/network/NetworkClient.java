@@ -1,13 +1,51 @@
 package atk.app.network;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
 import java.net.SocketAddress;
 import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 public interface NetworkClient {
 
     CompletableFuture<NetworkResponse> send(NetworkRequest request, SocketAddress targetAddress, Duration responseMaxTimeout);
 
+    /**
+     * Send a request which may be answered with a {@link ChunkedResponse}. Every chunk except the last one is passed
+     * to chunkConsumer as soon as it is received, the last chunk completes the returned future
+     *
+     * @param chunkExecutor - runs chunkConsumer. Chunks are consumed one by one, so it doesn't have to be single threaded
+     */
+    CompletableFuture<NetworkResponse> send(NetworkRequest request, SocketAddress targetAddress, Duration responseMaxTimeout,
+                                            Consumer<NetworkResponse> chunkConsumer, Executor chunkExecutor);
+
     List<CompletableFuture<NetworkResponse>> send(NetworkRequest request, List<SocketAddress> targetAddresses, Duration responseMaxTimeout);
+
+    /**
+     * @return - number of bytes that the request takes on the wire, so a sender can charge its bandwidth before sending it
+     */
+    default int encodedSize(NetworkRequest request) {
+        var buffer = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(buffer)) {
+            out.writeObject(request);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return buffer.size();
+    }
+
+    /**
+     * Send a request and measure its round trip time. By default the time is measured around the whole send,
+     * a transport that knows when the request is written measures only the time on the wire
+     */
+    default CompletableFuture<TimedResponse> sendTimed(NetworkRequest request, SocketAddress targetAddress, Duration responseMaxTimeout) {
+        var start = System.nanoTime();
+        return send(request, targetAddress, responseMaxTimeout)
+                .thenApply(response -> new TimedResponse(response, Duration.ofNanos(System.nanoTime() - start)));
+    }
 }
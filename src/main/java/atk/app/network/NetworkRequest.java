@@ -5,4 +5,7 @@ import java.io.Serializable;
 //TODO - Do not use java serialization to ser/des network messages. It is not efficient
 public interface NetworkRequest extends Serializable {
 
+    default TrafficClass trafficClass() {
+        return TrafficClass.PROBE;
+    }
 }
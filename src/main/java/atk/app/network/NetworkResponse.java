@@ -4,4 +4,7 @@ import java.io.Serializable;
 
 public interface NetworkResponse extends Serializable {
 
+    default TrafficClass trafficClass() {
+        return TrafficClass.ACK;
+    }
 }
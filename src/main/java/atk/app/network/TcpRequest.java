@@ -1,15 +1,37 @@
 package atk.app.network;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public class TcpRequest {
 
     private final NetworkRequest networkRequest;
     private final CompletableFuture<NetworkResponse> responseHandler;
+    private final Function<ChunkedResponse, CompletableFuture<Void>> chunkWriter;
+    // null if the requester didn't send its deadline
+    private final Instant deadline;
 
     public TcpRequest(NetworkRequest networkRequest) {
+        this(networkRequest, chunk -> CompletableFuture.failedFuture(new UnsupportedOperationException("Chunked responses are not supported")));
+    }
+
+    /**
+     * @param chunkWriter - writes a chunk of a response. Returned future completes when the chunk is written
+     */
+    public TcpRequest(NetworkRequest networkRequest, Function<ChunkedResponse, CompletableFuture<Void>> chunkWriter) {
+        this(networkRequest, chunkWriter, null);
+    }
+
+    /**
+     * @param deadline - time after which the requester doesn't wait for the response. Null if it's unknown
+     */
+    public TcpRequest(NetworkRequest networkRequest, Function<ChunkedResponse, CompletableFuture<Void>> chunkWriter, Instant deadline) {
         this.networkRequest = networkRequest;
         this.responseHandler = new CompletableFuture<>();
+        this.chunkWriter = chunkWriter;
+        this.deadline = deadline;
     }
 
     public NetworkRequest getRequest() {
@@ -20,5 +42,33 @@ public class TcpRequest {
         return responseHandler;
     }
 
+    /**
+     * @return - time left until the deadline of the requester, but not more than the maximum. The maximum if the deadline is unknown
+     */
+    public Duration getRemainingTime(Duration maximum) {
+        if (deadline == null) {
+            return maximum;
+        }
+        var remaining = Duration.between(Instant.now(), deadline);
+        return remaining.compareTo(maximum) < 0 ? remaining : maximum;
+    }
+
+    /**
+     * @return - true if the requester doesn't wait for the response anymore. The response was cancelled when
+     * the requester closed the connection
+     */
+    public boolean isAbandoned() {
+        return responseHandler.isCancelled() || (deadline != null && !Instant.now().isBefore(deadline));
+    }
 
+    /**
+     * Send a chunk of a response that is not the last one. The last chunk should complete the response handler.
+     * A next chunk should be sent only when the returned future completes, so at most one chunk is buffered
+     */
+    public CompletableFuture<Void> sendChunk(ChunkedResponse chunk) {
+        if (chunk.lastChunk()) {
+            throw new IllegalArgumentException("The last chunk should complete the response handler");
+        }
+        return chunkWriter.apply(chunk);
+    }
 }
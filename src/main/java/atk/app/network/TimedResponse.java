@@ -0,0 +1,10 @@
+package atk.app.network;
+
+import java.time.Duration;
+
+/**
+ * @param roundTripTime - time between the moment the request was written to the socket and the moment the response
+ *                      was read from it. It doesn't include connect and waiting for the egress budget
+ */
+public record TimedResponse(NetworkResponse response, Duration roundTripTime) {
+}
@@ -0,0 +1,19 @@
+package atk.app.network;
+
+/**
+ * Priority of a message in the egress budget of a member. Classes are declared from the highest priority to the lowest
+ */
+public enum TrafficClass {
+    /**
+     * Acks and refutations. Delaying them makes healthy members look failed
+     */
+    ACK,
+    /**
+     * Pings, indirect pings and gossip
+     */
+    PROBE,
+    /**
+     * Full state syncs
+     */
+    BULK
+}
@@ -0,0 +1,185 @@
+package atk.app.network;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+
+public class TransportConfig {
+
+    /**
+     * Compress bulk messages, like chunks of a full state sync, with deflate before they are framed. Probes and acks
+     * are small and are never compressed. Receivers inflate compressed messages whatever their own value is
+     */
+    public final boolean compression;
+    /**
+     * I/O transport used by the server and the client
+     */
+    public final Transport transport;
+    /**
+     * Number of I/O threads that decode and encode messages of accepted connections
+     */
+    public final int serverWorkerThreads;
+    /**
+     * Number of server sockets bound to the same port with SO_REUSEPORT, so the kernel spreads new connections between them.
+     * It is supported only by the epoll transport, other transports use one socket
+     */
+    public final int serverAcceptors;
+    /**
+     * Number of consecutive failed connects to an address after which requests to it fail immediately
+     */
+    public final int circuitBreakerFailures;
+    /**
+     * Time after which a connect to an address with an open circuit is retried in the background
+     */
+    public final Duration circuitBreakerOpenDuration;
+    /**
+     * Maximum number of bytes per second that a member sends. Zero or a negative value disables the limit
+     */
+    public final long egressBytesPerSecond;
+    /**
+     * Maximum number of bytes that wait for the egress budget in every traffic class. Messages beyond it are dropped
+     */
+    public final long egressQueueBytesPerClass;
+    /**
+     * Maximum number of requests per second that the server accepts from one remote host. Zero or a negative value disables the limit
+     */
+    public final long inboundRequestsPerSecondPerPeer;
+    /**
+     * Maximum number of bytes per second that the server reads from one remote host. Zero or a negative value disables the limit
+     */
+    public final long inboundBytesPerSecondPerPeer;
+    /**
+     * Decides which connections belong to one peer for the inbound limits
+     */
+    public final PeerKey inboundPeerKey;
+
+    /**
+     * Config with default values, see {@link Builder}
+     */
+    public TransportConfig() {
+        this(builder());
+    }
+
+    private TransportConfig(Builder builder) {
+        this.compression = builder.compression;
+        this.transport = builder.transport;
+        this.serverWorkerThreads = builder.serverWorkerThreads;
+        this.serverAcceptors = builder.serverAcceptors;
+        this.circuitBreakerFailures = builder.circuitBreakerFailures;
+        this.circuitBreakerOpenDuration = builder.circuitBreakerOpenDuration;
+        this.egressBytesPerSecond = builder.egressBytesPerSecond;
+        this.egressQueueBytesPerClass = builder.egressQueueBytesPerClass;
+        this.inboundRequestsPerSecondPerPeer = builder.inboundRequestsPerSecondPerPeer;
+        this.inboundBytesPerSecondPerPeer = builder.inboundBytesPerSecondPerPeer;
+        this.inboundPeerKey = builder.inboundPeerKey;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean compression = true;
+        private Transport transport = Transport.AUTO;
+        private int serverWorkerThreads = Runtime.getRuntime().availableProcessors();
+        private int serverAcceptors = 1;
+        private int circuitBreakerFailures = 3;
+        private Duration circuitBreakerOpenDuration = Duration.ofSeconds(5);
+        private long egressBytesPerSecond = 8 * 1024 * 1024;
+        private long egressQueueBytesPerClass = 1024 * 1024;
+        private long inboundRequestsPerSecondPerPeer = 1000;
+        private long inboundBytesPerSecondPerPeer = 16 * 1024 * 1024;
+        private PeerKey inboundPeerKey = PeerKey.host();
+
+        public Builder compression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        public Builder transport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        public Builder serverWorkerThreads(int serverWorkerThreads) {
+            this.serverWorkerThreads = serverWorkerThreads;
+            return this;
+        }
+
+        public Builder serverAcceptors(int serverAcceptors) {
+            this.serverAcceptors = serverAcceptors;
+            return this;
+        }
+
+        public Builder circuitBreakerFailures(int circuitBreakerFailures) {
+            this.circuitBreakerFailures = circuitBreakerFailures;
+            return this;
+        }
+
+        public Builder circuitBreakerOpenDuration(Duration circuitBreakerOpenDuration) {
+            this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+            return this;
+        }
+
+        public Builder egressBytesPerSecond(long egressBytesPerSecond) {
+            this.egressBytesPerSecond = egressBytesPerSecond;
+            return this;
+        }
+
+        public Builder egressQueueBytesPerClass(long egressQueueBytesPerClass) {
+            this.egressQueueBytesPerClass = egressQueueBytesPerClass;
+            return this;
+        }
+
+        public Builder inboundRequestsPerSecondPerPeer(long inboundRequestsPerSecondPerPeer) {
+            this.inboundRequestsPerSecondPerPeer = inboundRequestsPerSecondPerPeer;
+            return this;
+        }
+
+        public Builder inboundBytesPerSecondPerPeer(long inboundBytesPerSecondPerPeer) {
+            this.inboundBytesPerSecondPerPeer = inboundBytesPerSecondPerPeer;
+            return this;
+        }
+
+        public Builder inboundPeerKey(PeerKey inboundPeerKey) {
+            this.inboundPeerKey = inboundPeerKey;
+            return this;
+        }
+
+        public TransportConfig build() {
+            return new TransportConfig(this);
+        }
+    }
+
+    /**
+     * Identity of a peer that is known as soon as its connection is accepted, before anything is read from it
+     */
+    public interface PeerKey {
+
+        /**
+         * @return - key of the peer that opened a connection from the remote address. Connections with equal keys share
+         * the limits. Null if the connection isn't limited
+         */
+        Object of(SocketAddress remoteAddress);
+
+        /**
+         * Every remote host is one peer. Members behind one NAT or proxy share the limits of one member, members hosted
+         * in one JVM as well
+         */
+        static PeerKey host() {
+            return remoteAddress -> remoteAddress instanceof InetSocketAddress inetAddress ? inetAddress.getAddress() : null;
+        }
+    }
+
+    public enum Transport {
+        /**
+         * Native epoll if it is available on the host, otherwise NIO
+         */
+        AUTO,
+        /**
+         * Native epoll. Fails if it isn't available on the host
+         */
+        EPOLL,
+        NIO
+    }
+}
@@ -0,0 +1,105 @@
+package atk.app.network.netty;
+
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker of every target address. After several consecutive failed connects the circuit opens and requests
+ * to the address fail immediately. While it's open a connect is retried in the background, the circuit closes
+ * when it succeeds. An address that isn't requested while its circuit is open is forgotten. Thread safe class
+ */
+class ConnectCircuitBreakers {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectCircuitBreakers.class);
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Executor executor;
+    private final Function<SocketAddress, CompletableFuture<Void>> trialConnect;
+    private final Map<SocketAddress, Circuit> circuits = new ConcurrentHashMap<>();
+
+    /**
+     * @param trialConnect - connects to the address and closes the connection
+     */
+    ConnectCircuitBreakers(int failureThreshold, Duration openDuration, Executor executor,
+                           Function<SocketAddress, CompletableFuture<Void>> trialConnect) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.executor = executor;
+        this.trialConnect = trialConnect;
+    }
+
+    boolean allowRequest(SocketAddress address) {
+        var circuit = circuits.get(address);
+        return circuit == null || circuit.allowRequest();
+    }
+
+    void onConnectSuccess(SocketAddress address) {
+        circuits.remove(address);
+    }
+
+    void onConnectFailure(SocketAddress address) {
+        var circuit = circuits.computeIfAbsent(address, unused -> new Circuit());
+        if (circuit.recordFailure(failureThreshold)) {
+            logger.warn("Open circuit for {} after {} failed connects", address, failureThreshold);
+            scheduleTrialConnect(address, circuit);
+        }
+    }
+
+    private void scheduleTrialConnect(SocketAddress address, Circuit circuit) {
+        CompletableFuture.delayedExecutor(openDuration.toMillis(), TimeUnit.MILLISECONDS, executor)
+                .execute(() -> {
+                    if (!circuit.takeRequestedWhileOpen()) {
+                        circuits.remove(address, circuit);
+                        return;
+                    }
+                    trialConnect.apply(address).whenComplete((unused, throwable) -> {
+                        if (throwable == null) {
+                            logger.info("Close circuit for {}", address);
+                            circuits.remove(address, circuit);
+                        } else {
+                            scheduleTrialConnect(address, circuit);
+                        }
+                    });
+                });
+    }
+
+    private static class Circuit {
+        private int failures;
+        private boolean open;
+        // address wasn't forgotten by its clients
+        private boolean requestedWhileOpen;
+
+        synchronized boolean allowRequest() {
+            if (open) {
+                requestedWhileOpen = true;
+            }
+            return !open;
+        }
+
+        /**
+         * @return - true if the circuit has just opened
+         */
+        synchronized boolean recordFailure(int failureThreshold) {
+            failures++;
+            if (!open && failures >= failureThreshold) {
+                open = true;
+                requestedWhileOpen = true;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized boolean takeRequestedWhileOpen() {
+            var result = requestedWhileOpen;
+            requestedWhileOpen = false;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package atk.app.network.netty;
+
+import atk.app.network.TrafficClass;
+import atk.app.network.TransportConfig;
+import atk.app.util.TokenBucket;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Egress budget of a member. A message waits in the queue of its traffic class until the token bucket has enough bytes
+ * for it. Queues are served in strict priority order, so a message waits while a message of a higher class is queued.
+ * A message is dropped when the queue of its class is full. A client and a server of the same member should share
+ * one scheduler. Thread safe class
+ */
+public class EgressScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(EgressScheduler.class);
+    private static final long MINIMUM_DRAIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private final long bytesPerSecond;
+    private final long maximumQueuedBytes;
+    private final Executor executor;
+    // null if the budget is unlimited
+    private final TokenBucket budget;
+    private final Map<TrafficClass, ClassQueue> queues = new EnumMap<>(TrafficClass.class);
+    private boolean drainScheduled;
+
+    /**
+     * @param executor - drains queues when the budget is refilled
+     */
+    public EgressScheduler(long bytesPerSecond, long maximumQueuedBytesPerClass, Executor executor) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.maximumQueuedBytes = maximumQueuedBytesPerClass;
+        this.executor = executor;
+        // one second of traffic can be sent in a burst
+        this.budget = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond) : null;
+        for (TrafficClass trafficClass : TrafficClass.values()) {
+            queues.put(trafficClass, new ClassQueue());
+        }
+    }
+
+    public EgressScheduler(TransportConfig transportConfig, Executor executor) {
+        this(transportConfig.egressBytesPerSecond, transportConfig.egressQueueBytesPerClass, executor);
+    }
+
+    /**
+     * @return - future that completes when the message can be written. It fails with {@link RejectedExecutionException}
+     * if the message is dropped
+     */
+    public CompletableFuture<Void> acquire(TrafficClass trafficClass, long bytes) {
+        var permit = new Permit(bytes, new CompletableFuture<>());
+        List<Permit> granted;
+        synchronized (this) {
+            var queue = queues.get(trafficClass);
+            // a message bigger than the queue is accepted by an empty queue
+            if (!queue.permits.isEmpty() && queue.queuedBytes + bytes > maximumQueuedBytes) {
+                queue.droppedBytes += bytes;
+                logger.debug("Drop {} bytes of {} traffic, the egress queue is full", bytes, trafficClass);
+                return CompletableFuture.failedFuture(new RejectedExecutionException("Egress queue of " + trafficClass + " traffic is full"));
+            }
+            queue.permits.add(permit);
+            queue.queuedBytes += bytes;
+            granted = drain();
+        }
+        granted.forEach(grantedPermit -> grantedPermit.future.complete(null));
+        return permit.future;
+    }
+
+    public synchronized Stats stats(TrafficClass trafficClass) {
+        var queue = queues.get(trafficClass);
+        return new Stats(queue.queuedBytes, queue.sentBytes, queue.droppedBytes);
+    }
+
+    /**
+     * @return - permits that got the budget. They are completed outside of the lock
+     */
+    private List<Permit> drain() {
+        var granted = new ArrayList<Permit>();
+        for (TrafficClass trafficClass : TrafficClass.values()) {
+            var queue = queues.get(trafficClass);
+            while (!queue.permits.isEmpty()) {
+                var permit = queue.permits.peek();
+                // a message bigger than the bucket takes the whole bucket
+                var charge = Math.min(permit.bytes, bytesPerSecond);
+                if (budget != null && !budget.tryAcquire(charge)) {
+                    scheduleDrain(charge - budget.availableTokens());
+                    return granted;
+                }
+                queue.permits.poll();
+                queue.queuedBytes -= permit.bytes;
+                queue.sentBytes += permit.bytes;
+                granted.add(permit);
+            }
+        }
+        return granted;
+    }
+
+    private void scheduleDrain(long missingBytes) {
+        if (drainScheduled) {
+            return;
+        }
+        drainScheduled = true;
+        var delayNanos = Math.max(MINIMUM_DRAIN_DELAY_NANOS, missingBytes * Duration.ofSeconds(1).toNanos() / bytesPerSecond);
+        try {
+            CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, executor).execute(() -> {
+                List<Permit> granted;
+                synchronized (this) {
+                    drainScheduled = false;
+                    granted = drain();
+                }
+                granted.forEach(permit -> permit.future.complete(null));
+            });
+        } catch (RejectedExecutionException ex) {
+            drainScheduled = false;
+            logger.warn("Wasn't able to schedule egress drain", ex);
+        }
+    }
+
+    /**
+     * @param queuedBytes  - bytes that wait for the budget
+     * @param sentBytes    - bytes that got the budget since the scheduler was created
+     * @param droppedBytes - bytes that were dropped since the scheduler was created
+     */
+    public record Stats(long queuedBytes, long sentBytes, long droppedBytes) {
+    }
+
+    private record Permit(long bytes, CompletableFuture<Void> future) {
+    }
+
+    private static class ClassQueue {
+        private final Queue<Permit> permits = new ArrayDeque<>();
+        private long queuedBytes;
+        private long sentBytes;
+        private long droppedBytes;
+    }
+}
@@ -0,0 +1,156 @@
+package atk.app.network.netty;
+
+import atk.app.network.TransportConfig;
+import atk.app.util.TokenBucket;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits requests and bytes that every peer sends to the server, so one peer can't monopolize the request handler.
+ * It sits before the decoders, so bytes over the byte rate are released without being decoded. Requests are counted
+ * by {@link #requestLimiter()} after the decoders, so a peer that sends many requests over one connection is limited
+ * as well. A connection of a peer over a limit is closed. Shared by all connections of a server. Thread safe class
+ * <p>
+ * Sender of a request is known only after it's decoded, so a peer is identified by the {@link TransportConfig.PeerKey key}
+ * of its remote address. By default it's the remote host, so members that connect from one address share the limits
+ */
+@ChannelHandler.Sharable
+public class InboundRateLimiter extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(InboundRateLimiter.class);
+    // peers that were idle longer than this are forgotten when too many peers are tracked
+    private static final long IDLE_PEER_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int MAXIMUM_TRACKED_PEERS = 1024;
+    private final long requestsPerSecond;
+    private final long bytesPerSecond;
+    private final TransportConfig.PeerKey peerKey;
+    private final Map<Object, Peer> peers = new ConcurrentHashMap<>();
+    private final ChannelHandler requestLimiter = new RequestLimiter();
+
+    public InboundRateLimiter(long requestsPerSecond, long bytesPerSecond) {
+        this(requestsPerSecond, bytesPerSecond, TransportConfig.PeerKey.host());
+    }
+
+    /**
+     * @param requestsPerSecond - maximum rate of requests of one peer. Zero or a negative value disables the limit
+     * @param bytesPerSecond    - maximum rate of bytes of one peer. Zero or a negative value disables the limit
+     * @param peerKey           - identifies the peer of a connection
+     */
+    public InboundRateLimiter(long requestsPerSecond, long bytesPerSecond, TransportConfig.PeerKey peerKey) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+        this.peerKey = peerKey;
+    }
+
+    /**
+     * @return - handler that charges every decoded request of a peer. It should be added after the decoders of the
+     * pipeline, this limiter should be added before them
+     */
+    public ChannelHandler requestLimiter() {
+        return requestLimiter;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        var peer = peerOf(ctx.channel().remoteAddress());
+        if (peer != null && peer.bytes != null && msg instanceof ByteBuf buffer) {
+            var readableBytes = buffer.readableBytes();
+            // a read bigger than the bucket takes the whole bucket
+            if (!peer.bytes.tryAcquire(Math.min(readableBytes, bytesPerSecond))) {
+                ReferenceCountUtil.release(msg);
+                peer.onThrottledBytes(ctx.channel().remoteAddress(), readableBytes);
+                ctx.close();
+                return;
+            }
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    /**
+     * @return - counters of peers that were throttled at least once
+     */
+    public Map<Object, ThrottleStats> getThrottledPeers() {
+        return peers.entrySet().stream()
+                .filter(entry -> entry.getValue().isThrottled())
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().stats()));
+    }
+
+    private Peer peerOf(SocketAddress remoteAddress) {
+        if (requestsPerSecond <= 0 && bytesPerSecond <= 0) {
+            return null;
+        }
+        var key = peerKey.of(remoteAddress);
+        if (key == null) {
+            return null;
+        }
+        var now = System.nanoTime();
+        if (peers.size() > MAXIMUM_TRACKED_PEERS) {
+            peers.values().removeIf(peer -> now - peer.lastSeenNanos > IDLE_PEER_NANOS);
+        }
+        var peer = peers.computeIfAbsent(key, unused -> new Peer());
+        peer.lastSeenNanos = now;
+        return peer;
+    }
+
+    /**
+     * @param throttledRequests - requests that were dropped because the peer exceeded the request rate
+     * @param throttledBytes    - bytes that were dropped because the peer exceeded the byte rate
+     */
+    public record ThrottleStats(long throttledRequests, long throttledBytes) {
+    }
+
+    @ChannelHandler.Sharable
+    private class RequestLimiter extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            var peer = peerOf(ctx.channel().remoteAddress());
+            if (peer != null && peer.requests != null && !peer.requests.tryAcquire(1)) {
+                ReferenceCountUtil.release(msg);
+                peer.onThrottledRequest(ctx.channel().remoteAddress());
+                ctx.close();
+                return;
+            }
+            super.channelRead(ctx, msg);
+        }
+    }
+
+    private class Peer {
+        // null if the limit is disabled. One second of traffic can be received in a burst
+        private final TokenBucket requests = requestsPerSecond > 0 ? new TokenBucket(requestsPerSecond, requestsPerSecond) : null;
+        private final TokenBucket bytes = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond) : null;
+        private final AtomicLong throttledRequests = new AtomicLong();
+        private final AtomicLong throttledBytes = new AtomicLong();
+        private volatile long lastSeenNanos;
+
+        void onThrottledRequest(SocketAddress remoteAddress) {
+            if (throttledRequests.getAndIncrement() == 0) {
+                logger.warn("Throttle requests of {}, it exceeds {} requests per second", remoteAddress, requestsPerSecond);
+            }
+        }
+
+        void onThrottledBytes(SocketAddress remoteAddress, long bytes) {
+            if (throttledBytes.getAndAdd(bytes) == 0) {
+                logger.warn("Throttle bytes of {}, it exceeds {} bytes per second", remoteAddress, bytesPerSecond);
+            }
+        }
+
+        boolean isThrottled() {
+            return throttledRequests.get() > 0 || throttledBytes.get() > 0;
+        }
+
+        ThrottleStats stats() {
+            return new ThrottleStats(throttledRequests.get(), throttledBytes.get());
+        }
+    }
+}
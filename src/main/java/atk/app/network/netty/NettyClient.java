@@ -2,133 +2,407 @@ package atk.app.network.netty;
 
 import static atk.app.lifecycle.LifecycleStates.STARTED;
 import atk.app.lifecycle.ThreadSafeLifecycle;
+import atk.app.network.ClusterEnvelope;
+import atk.app.network.DeadlineEnvelope;
 import atk.app.network.NetworkClient;
 import atk.app.network.NetworkRequest;
 import atk.app.network.NetworkResponse;
-import atk.app.util.ConcurrencyUtil;
-import atk.app.util.ExceptionUtil;
+import atk.app.network.TimedResponse;
+import atk.app.network.TransportConfig;
+import atk.app.runtime.SharedRuntime;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.serialization.ClassResolvers;
-import io.netty.handler.codec.serialization.ObjectDecoder;
-import io.netty.handler.codec.serialization.ObjectEncoder;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import java.io.Serializable;
+import java.net.ConnectException;
 import java.net.SocketAddress;
 import java.time.Duration;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class NettyClient implements NetworkClient {
 
+    private static final Consumer<NetworkResponse> IGNORE_CHUNKS = chunk -> {
+    };
+    // ignored chunks aren't worth a hop to another thread
+    private static final Executor IGNORE_CHUNKS_EXECUTOR = Runnable::run;
+    private static final Consumer<Duration> IGNORE_ROUND_TRIP = roundTripTime -> {
+    };
     private final ExecutorService lifecycleExecutor;
+    private final TransportConfig transportConfig;
+    private final NettyTransports transports;
+    // null if every request uses its own event loop group
+    private final EventLoopGroup sharedGroup;
+    // null if requests aren't wrapped into a cluster envelope
+    private final String clusterId;
+    private final ConnectCircuitBreakers circuitBreakers;
+    private final EgressScheduler egressScheduler;
 
-    public NettyClient(ExecutorService lifecycleExecutor) {
+    /**
+     * @param egressScheduler - egress budget of the member. The server of the same member should use the same one
+     */
+    public NettyClient(ExecutorService lifecycleExecutor, TransportConfig transportConfig, EgressScheduler egressScheduler) {
         this.lifecycleExecutor = lifecycleExecutor;
+        this.transportConfig = transportConfig;
+        this.transports = new NettyTransports(transportConfig.transport);
+        this.sharedGroup = null;
+        this.clusterId = null;
+        this.circuitBreakers = newCircuitBreakers();
+        this.egressScheduler = egressScheduler;
+    }
+
+    /**
+     * All requests use the event loop group of the runtime. Transport of the runtime overrides the transport of the config
+     *
+     * @param egressScheduler - egress budget of the member. The server of the same member should use the same one
+     */
+    public NettyClient(SharedRuntime runtime, TransportConfig transportConfig, EgressScheduler egressScheduler) {
+        this.lifecycleExecutor = runtime.lifecycleExecutor();
+        this.transportConfig = transportConfig;
+        this.transports = runtime.transports();
+        this.sharedGroup = runtime.eventLoopGroup();
+        this.clusterId = null;
+        this.circuitBreakers = newCircuitBreakers();
+        this.egressScheduler = egressScheduler;
+    }
+
+    private NettyClient(NettyClient client, String clusterId, EgressScheduler egressScheduler) {
+        this.lifecycleExecutor = client.lifecycleExecutor;
+        this.transportConfig = client.transportConfig;
+        this.transports = client.transports;
+        this.sharedGroup = client.sharedGroup;
+        this.clusterId = clusterId;
+        this.circuitBreakers = client.circuitBreakers;
+        this.egressScheduler = egressScheduler;
+    }
+
+    private ConnectCircuitBreakers newCircuitBreakers() {
+        return new ConnectCircuitBreakers(transportConfig.circuitBreakerFailures, transportConfig.circuitBreakerOpenDuration,
+                lifecycleExecutor, address -> tryToConnect(address, transportConfig.circuitBreakerOpenDuration));
+    }
+
+    /**
+     * @return - egress budget of the member that sends requests with this client
+     */
+    public EgressScheduler getEgressScheduler() {
+        return egressScheduler;
+    }
+
+    /**
+     * Connects to the address without sending anything and closes the connection
+     */
+    private CompletableFuture<Void> tryToConnect(SocketAddress address, Duration connectTimeout) {
+        var group = sharedGroup != null ? sharedGroup : transports.newEventLoopGroup(1);
+        var result = new CompletableFuture<Void>();
+        var bootstrap = new Bootstrap()
+                .group(group)
+                .channel(transports.socketChannelClass())
+                .handler(new ChannelInboundHandlerAdapter())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis(connectTimeout));
+        bootstrap.connect(address).addListener((ChannelFutureListener) connectFuture -> {
+            if (connectFuture.isSuccess()) {
+                connectFuture.channel().close();
+                result.complete(null);
+            } else {
+                result.completeExceptionally(connectFuture.cause());
+            }
+        });
+        if (sharedGroup == null) {
+            result.whenComplete((unused, throwable) -> group.shutdownGracefully(0, 10, TimeUnit.SECONDS));
+        }
+        return result;
+    }
+
+    private static int connectTimeoutMillis(Duration timeout) {
+        return (int) Math.max(1, Math.min(timeout.toMillis(), Integer.MAX_VALUE));
+    }
+
+    /**
+     * @return - client that sends requests to the {@link NettyServer#clusterServer(String, atk.app.util.channel.Channel) cluster server}
+     * with the given id. It shares the threads of this client
+     *
+     * @param egressScheduler - egress budget of the member of the cluster. The server of the member should use the same one
+     */
+    public NettyClient forCluster(String clusterId, EgressScheduler egressScheduler) {
+        return new NettyClient(this, clusterId, egressScheduler);
     }
 
     @Override
     public CompletableFuture<NetworkResponse> send(NetworkRequest request, SocketAddress targetAddress, Duration responseMaxTimeout) {
-        // client is responsible for closing this resource
-        var requestSender = new SingleRequestSender(lifecycleExecutor, targetAddress);
-        var result = requestSender.start()
-                .thenCompose(unused -> requestSender.sendMessage(request, responseMaxTimeout));
-        //stop netty client when future completes or it's closed from the client side
-        result.whenComplete((networkResponse, throwable) -> requestSender.close());
-        return result;
+        return send(request, targetAddress, responseMaxTimeout, IGNORE_CHUNKS, IGNORE_CHUNKS_EXECUTOR);
+    }
+
+    @Override
+    public CompletableFuture<NetworkResponse> send(NetworkRequest request, SocketAddress targetAddress, Duration responseMaxTimeout,
+                                                   Consumer<NetworkResponse> chunkConsumer, Executor chunkExecutor) {
+        return send(request, NettyCodecs.encode(wrap(request, responseMaxTimeout)), targetAddress, responseMaxTimeout, chunkConsumer,
+                chunkExecutor, IGNORE_ROUND_TRIP);
+    }
+
+    /**
+     * Round trip time is measured by the channel handler from the write of the request to the read of the response
+     */
+    @Override
+    public CompletableFuture<TimedResponse> sendTimed(NetworkRequest request, SocketAddress targetAddress, Duration responseMaxTimeout) {
+        var roundTripTime = new AtomicReference<Duration>();
+        var response = send(request, NettyCodecs.encode(wrap(request, responseMaxTimeout)), targetAddress, responseMaxTimeout,
+                IGNORE_CHUNKS, IGNORE_CHUNKS_EXECUTOR, roundTripTime::set);
+        var timedResponse = response.thenApply(networkResponse -> new TimedResponse(networkResponse, roundTripTime.get()));
+        // cancel of the timed response releases the connection at once
+        timedResponse.whenComplete((unused, throwable) -> response.cancel(false));
+        return timedResponse;
     }
 
+    /**
+     * Request is serialized only once into a pooled buffer and every target receives a retained duplicate of it
+     */
     @Override
     public List<CompletableFuture<NetworkResponse>> send(NetworkRequest request, List<SocketAddress> targetAddresses, Duration responseMaxTimeout) {
-        return targetAddresses.stream().map(targetAddress -> send(request, targetAddress, responseMaxTimeout))
-                .toList();
+        if (targetAddresses.size() < 2) {
+            return targetAddresses.stream().map(targetAddress -> send(request, targetAddress, responseMaxTimeout))
+                    .toList();
+        }
+        var encodedRequest = NettyCodecs.encode(wrap(request, responseMaxTimeout));
+        try {
+            return targetAddresses.stream()
+                    .map(targetAddress -> send(request, encodedRequest.retainedDuplicate(), targetAddress, responseMaxTimeout,
+                            IGNORE_CHUNKS, IGNORE_CHUNKS_EXECUTOR, IGNORE_ROUND_TRIP))
+                    .toList();
+        } finally {
+            encodedRequest.release();
+        }
+    }
+
+    /**
+     * Request is measured in the same format as it's sent. Value of the timeout that it carries doesn't change its size
+     */
+    @Override
+    public int encodedSize(NetworkRequest request) {
+        var encodedRequest = NettyCodecs.encode(wrap(request, Duration.ZERO));
+        try {
+            return encodedRequest.readableBytes();
+        } finally {
+            encodedRequest.release();
+        }
+    }
+
+    /**
+     * Request carries its timeout, so the receiver doesn't work on it after the sender gave up
+     */
+    private Serializable wrap(NetworkRequest request, Duration responseMaxTimeout) {
+        var timedRequest = new DeadlineEnvelope(request, responseMaxTimeout.toMillis());
+        return clusterId == null ? timedRequest : new ClusterEnvelope(clusterId, timedRequest);
+    }
+
+    /**
+     * @param message - encoded request. It is released when it's written or the request fails
+     */
+    private CompletableFuture<NetworkResponse> send(NetworkRequest request, ByteBuf message, SocketAddress targetAddress,
+                                                    Duration responseMaxTimeout, Consumer<NetworkResponse> chunkConsumer,
+                                                    Executor chunkExecutor, Consumer<Duration> roundTripListener) {
+        if (!circuitBreakers.allowRequest(targetAddress)) {
+            message.release();
+            return CompletableFuture.failedFuture(new ConnectException("Circuit is open for " + targetAddress));
+        }
+        var response = new CompletableFuture<NetworkResponse>();
+        // connection is opened only when the request gets the egress budget
+        egressScheduler.acquire(request.trafficClass(), message.readableBytes()).whenComplete((unused, throwable) -> {
+            if (throwable != null) {
+                message.release();
+                response.completeExceptionally(throwable);
+            } else if (response.isDone()) {
+                //cancelled while it waited for the budget
+                message.release();
+            } else {
+                connectAndSend(request, message, targetAddress, responseMaxTimeout, chunkConsumer, chunkExecutor, roundTripListener,
+                        response);
+            }
+        });
+        return response;
+    }
+
+    /**
+     * @param response - completed with the response. When it's completed from the client side, for example cancelled,
+     *                 the connection is closed without waiting for the response
+     */
+    private void connectAndSend(NetworkRequest request, ByteBuf message, SocketAddress targetAddress, Duration responseMaxTimeout,
+                                Consumer<NetworkResponse> chunkConsumer, Executor chunkExecutor,
+                                Consumer<Duration> roundTripListener, CompletableFuture<NetworkResponse> response) {
+        // client is responsible for closing this resource
+        var group = sharedGroup != null ? sharedGroup : transports.newEventLoopGroup(1);
+        // connect can't take longer than the whole request
+        var requestSender = new SingleRequestSender(lifecycleExecutor, targetAddress, transportConfig, transports, group,
+                sharedGroup == null, new NettyClientHandler(chunkConsumer, chunkExecutor, responseMaxTimeout, roundTripListener), connectTimeoutMillis(responseMaxTimeout));
+        var started = requestSender.start();
+        started.whenComplete((unused, throwable) -> {
+            if (throwable != null) {
+                ReferenceCountUtil.release(message);
+                circuitBreakers.onConnectFailure(targetAddress);
+            } else {
+                circuitBreakers.onConnectSuccess(targetAddress);
+            }
+        });
+        started.thenCompose(unused -> {
+            if (response.isDone()) {
+                message.release();
+                return response;
+            }
+            return requestSender.sendMessage(request, message);
+        }).whenComplete((networkResponse, throwable) -> {
+            if (throwable != null) {
+                response.completeExceptionally(throwable);
+            } else {
+                response.complete(networkResponse);
+            }
+        });
+        //stop netty client when the response completes or it's cancelled from the client side. Nothing waits for
+        //the channel to close, so it can be requested from the event loop of the channel
+        response.whenComplete((networkResponse, throwable) ->
+                started.whenComplete((unused, startThrowable) -> requestSender.closeAsync()));
     }
 
     private static class SingleRequestSender extends ThreadSafeLifecycle {
         private final SocketAddress hostAddress;
         private final Bootstrap bootstrap;
-        private final NioEventLoopGroup group;
+        private final EventLoopGroup group;
+        private final boolean ownsGroup;
         private final NettyClientHandler nettyClientHandler;
-        private final ExecutorService nettyClientExecutor;
 
         private volatile Channel channel;
 
         public SingleRequestSender(ExecutorService lifecycleExecutor,
-                                   SocketAddress hostAddress) {
+                                   SocketAddress hostAddress,
+                                   TransportConfig transportConfig,
+                                   NettyTransports transports,
+                                   EventLoopGroup group,
+                                   boolean ownsGroup,
+                                   NettyClientHandler nettyClientHandler,
+                                   int connectTimeoutMillis) {
             super(lifecycleExecutor);
-            this.nettyClientExecutor = Executors.newSingleThreadExecutor();
             this.hostAddress = hostAddress;
-            this.group = new NioEventLoopGroup(1);
+            this.group = group;
+            this.ownsGroup = ownsGroup;
             this.bootstrap = new Bootstrap();
-            this.nettyClientHandler = new NettyClientHandler();
+            this.nettyClientHandler = nettyClientHandler;
             bootstrap.group(group)
-                    .channel(NioSocketChannel.class)
+                    .channel(transports.socketChannelClass())
                     .handler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         public void initChannel(SocketChannel ch) {
                             ChannelPipeline p = ch.pipeline();
-                            p.addLast(
-                                    new ObjectEncoder(),
-                                    new ObjectDecoder(ClassResolvers.cacheDisabled(null)),
-                                    nettyClientHandler
-                            );
+                            NettyCodecs.addCodecs(p);
+                            p.addLast(nettyClientHandler);
                         }
                     });
+            bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis);
+            transports.configure(bootstrap);
         }
 
-        private CompletableFuture<NetworkResponse> sendMessage(NetworkRequest request, Duration requestTimeout) {
-            return CompletableFuture.supplyAsync(() -> {
+        /**
+         * Response is delivered by the channel handler, so no thread waits for it
+         */
+        private CompletableFuture<NetworkResponse> sendMessage(NetworkRequest request, Object message) {
+            try {
                 verifyCurrentState(Set.of(STARTED));
-                channel.writeAndFlush(request);
-                logger.info("Send {} to {} ", request, hostAddress);
-                var response = nettyClientHandler.getResponseHandler().pull(requestTimeout);
-                if (response != null) {
-                    return response;
+            } catch (IllegalStateException ex) {
+                ReferenceCountUtil.release(message);
+                return CompletableFuture.failedFuture(ex);
+            }
+            // listener runs on the event loop before the response can be read
+            channel.writeAndFlush(message).addListener(future -> {
+                if (future.isSuccess()) {
+                    nettyClientHandler.onRequestWritten();
                 }
-                throw new IllegalStateException("Request was interrupted, no response");
-            }, nettyClientExecutor);
+            });
+            nettyClientHandler.startResponseTimer(channel.eventLoop());
+            logger.debug("Send {} to {}", request, hostAddress);
+            return nettyClientHandler.getResponse();
         }
 
         @Override
         protected void start0() {
-            try {
-                var channelFuture = bootstrap.connect(hostAddress).sync();
-                this.channel = channelFuture.channel();
-                channelFuture.get(Duration.ofSeconds(10).toMillis(), TimeUnit.MILLISECONDS);
-                logger.debug("Successful bind to {}", hostAddress);
-            } catch (Exception ex) {
-                logger.info("Failed to connect {}", hostAddress, ex);
-                throw new RuntimeException(ex);
-            }
+            // connection is opened by startAsync0
         }
 
+        /**
+         * Connect doesn't block the lifecycle executor, the send continues when the connection is established
+         */
         @Override
-        protected void stop0() {
-            try {
-                if (channel == null) {
-                    return;
+        protected CompletableFuture<Void> startAsync0() {
+            var connected = new CompletableFuture<Void>();
+            // connect fails after the connect timeout of the bootstrap
+            bootstrap.connect(hostAddress).addListener((ChannelFutureListener) connectFuture -> {
+                if (connectFuture.isSuccess()) {
+                    this.channel = connectFuture.channel();
+                    logger.debug("Successful bind to {}", hostAddress);
+                    connected.complete(null);
+                } else {
+                    logger.info("Failed to connect {}", hostAddress, connectFuture.cause());
+                    connected.completeExceptionally(connectFuture.cause());
                 }
-                channel.close().get();
-                channel = null;
-                logger.info("Close connection with {}", hostAddress);
-            } catch (InterruptedException | ExecutionException e) {
-                throw new RuntimeException(e);
+            });
+            return connected;
+        }
+
+        @Override
+        protected void stop0() {
+            // connection is closed by stopAsync0
+        }
+
+        @Override
+        protected CompletableFuture<Void> stopAsync0() {
+            var currentChannel = channel;
+            if (currentChannel == null) {
+                return CompletableFuture.completedFuture(null);
             }
+            channel = null;
+            return toCompletableFuture(currentChannel.close())
+                    .thenRun(() -> logger.debug("Close connection with {}", hostAddress));
         }
 
         @Override
         protected void close0() {
-            ExceptionUtil.ignoreThrownExceptions(() -> group.shutdownGracefully().get(), logger);
-            ExceptionUtil.ignoreThrownExceptions(() -> nettyClientHandler.getResponseHandler().close(), logger);
-            ExceptionUtil.ignoreThrownExceptions(() -> ConcurrencyUtil.shutdownExecutor(nettyClientExecutor), logger);
+            // event loop group is shut down by closeAsync0
+        }
+
+        @Override
+        protected CompletableFuture<Void> closeAsync0() {
+            if (!ownsGroup) {
+                return CompletableFuture.completedFuture(null);
+            }
+            // the only channel of the group is already closed, so there is nothing to wait for in a quiet period
+            return toCompletableFuture(group.shutdownGracefully(0, 10, TimeUnit.SECONDS))
+                    .exceptionally(throwable -> {
+                        logger.warn("Wasn't able to shut down event loop group of {}", hostAddress, throwable);
+                        return null;
+                    });
+        }
+
+        private static CompletableFuture<Void> toCompletableFuture(Future<?> future) {
+            var result = new CompletableFuture<Void>();
+            future.addListener(completed -> {
+                if (completed.isSuccess()) {
+                    result.complete(null);
+                } else {
+                    result.completeExceptionally(completed.cause());
+                }
+            });
+            return result;
         }
     }
 }
@@ -15,61 +15,172 @@
  */
 package atk.app.network.netty;
 
+import atk.app.network.ChunkedResponse;
+import atk.app.network.ClusterEnvelope;
 import atk.app.network.NetworkResponse;
-import atk.app.util.channel.BoundedChannel;
-import atk.app.util.channel.Channel;
-import atk.app.util.channel.ReadableChannel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-import java.io.Closeable;
-import java.io.IOException;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class NettyClientHandler extends ChannelInboundHandlerAdapter implements Closeable {
+/**
+ * Receives a response of one request. Response is delivered on the channel event loop, so no thread waits for it
+ */
+public class NettyClientHandler extends ChannelInboundHandlerAdapter {
 
-    private final Channel<NetworkResponse> responseHandler;
     private static final Logger logger = LoggerFactory.getLogger(NettyClientHandler.class);
+    private final CompletableFuture<NetworkResponse> response = new CompletableFuture<>();
+    private final Consumer<NetworkResponse> chunkConsumer;
+    private final Executor chunkExecutor;
+    private final Duration responseTimeout;
+    private final Consumer<Duration> roundTripListener;
+    // accessed only from the channel event loop
+    private ScheduledFuture<?> responseTimer;
+    // System.nanoTime() when the request was written, zero until then. Accessed only from the channel event loop
+    private long writtenAt;
+    // messages which wait until the previous chunk is consumed. Accessed only from the channel event loop
+    private final Queue<NetworkResponse> received = new ArrayDeque<>();
+    // true while a chunk is consumed on the chunk executor. Accessed only from the channel event loop
+    private boolean consuming;
 
-    public NettyClientHandler() {
-        this.responseHandler = new BoundedChannel<>(1);
+    /**
+     * @param chunkConsumer     - consumes every chunk except the last one, chunks are consumed one by one in the order
+     *                          they arrive. While a chunk is consumed the next one isn't read from the socket
+     * @param chunkExecutor     - runs chunkConsumer, so the channel event loop isn't blocked by it
+     * @param responseTimeout   - maximum time to wait for a response or for the next chunk of a chunked response
+     * @param roundTripListener - is called with the time between writing the request and reading the first message
+     *                          of the response, before the response completes
+     */
+    public NettyClientHandler(Consumer<NetworkResponse> chunkConsumer, Executor chunkExecutor, Duration responseTimeout,
+                              Consumer<Duration> roundTripListener) {
+        this.chunkConsumer = chunkConsumer;
+        this.chunkExecutor = chunkExecutor;
+        this.responseTimeout = responseTimeout;
+        this.roundTripListener = roundTripListener;
     }
 
-    public ReadableChannel<NetworkResponse> getResponseHandler() {
-        return responseHandler;
+    public CompletableFuture<NetworkResponse> getResponse() {
+        return response;
     }
 
-    @Override
-    public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        super.channelActive(ctx);
+    /**
+     * Starts waiting for a response. It should be called when the request is written
+     */
+    void startResponseTimer(EventLoop eventLoop) {
+        eventLoop.execute(() -> restartResponseTimer(eventLoop));
+    }
+
+    /**
+     * It should be called on the channel event loop when the request is written to the socket
+     */
+    void onRequestWritten() {
+        writtenAt = System.nanoTime();
+    }
+
+    private void restartResponseTimer(EventLoop eventLoop) {
+        cancelResponseTimer();
+        if (response.isDone()) {
+            return;
+        }
+        responseTimer = eventLoop.schedule(() -> {
+            response.completeExceptionally(new IllegalStateException("Request was interrupted, no response"));
+        }, responseTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelResponseTimer() {
+        if (responseTimer != null) {
+            responseTimer.cancel(false);
+            responseTimer = null;
+        }
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancelResponseTimer();
+        response.completeExceptionally(new IllegalStateException("Connection was closed, no response"));
         super.channelInactive(ctx);
     }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         logger.info("Message received {}", msg);
-        if (msg instanceof NetworkResponse) {
-            responseHandler.push((NetworkResponse) msg);
+        if (msg instanceof ClusterEnvelope envelope) {
+            msg = envelope.message();
         }
+        if (!(msg instanceof NetworkResponse)) {
+            return;
+        }
+        if (writtenAt != 0) {
+            roundTripListener.accept(Duration.ofNanos(System.nanoTime() - writtenAt));
+            writtenAt = 0;
+        }
+        received.add((NetworkResponse) msg);
+        consumeReceived(ctx);
     }
 
-    @Override
-    public void channelReadComplete(ChannelHandlerContext ctx) {
-        ctx.flush();
+    /**
+     * Hands received chunks to the chunk executor one at a time and completes the response with the last message
+     * when all chunks before it are consumed
+     */
+    private void consumeReceived(ChannelHandlerContext ctx) {
+        while (!consuming && !received.isEmpty()) {
+            if (response.isDone()) {
+                received.clear();
+                return;
+            }
+            var message = received.poll();
+            if (!(message instanceof ChunkedResponse chunkedResponse) || chunkedResponse.lastChunk()) {
+                cancelResponseTimer();
+                response.complete(message);
+                continue;
+            }
+            // the response timer doesn't count the time spent by the consumer
+            cancelResponseTimer();
+            consuming = true;
+            ctx.channel().config().setAutoRead(false);
+            try {
+                chunkExecutor.execute(() -> {
+                    Throwable failure = null;
+                    try {
+                        chunkConsumer.accept(chunkedResponse);
+                    } catch (Exception ex) {
+                        failure = ex;
+                    }
+                    var consumeFailure = failure;
+                    ctx.channel().eventLoop().execute(() -> onChunkConsumed(ctx, consumeFailure));
+                });
+            } catch (RejectedExecutionException ex) {
+                onChunkConsumed(ctx, ex);
+            }
+        }
+    }
+
+    private void onChunkConsumed(ChannelHandlerContext ctx, Throwable failure) {
+        consuming = false;
+        if (failure != null) {
+            received.clear();
+            response.completeExceptionally(failure);
+            return;
+        }
+        restartResponseTimer(ctx.channel().eventLoop());
+        ctx.channel().config().setAutoRead(true);
+        consumeReceived(ctx);
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         cause.printStackTrace();
+        response.completeExceptionally(cause);
         ctx.close();
     }
-
-    @Override
-    public void close() throws IOException {
-        responseHandler.close();
-    }
 }
@@ -0,0 +1,160 @@
+package atk.app.network.netty;
+
+import atk.app.network.CompressedEnvelope;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.serialization.ClassResolvers;
+import io.netty.handler.codec.serialization.ObjectDecoder;
+import io.netty.handler.codec.serialization.ObjectEncoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codecs shared by the client and the server pipelines
+ */
+class NettyCodecs {
+    private static final PayloadEncoder payloadEncoder = new PayloadEncoder();
+    // flushes that are consolidated into one syscall while the event loop is busy
+    private static final int MAXIMUM_CONSOLIDATED_FLUSHES = 256;
+    // the same limit as the one of the object decoder in the pipeline, plus the length field of the frame
+    private static final int MAXIMUM_OBJECT_SIZE = 1048576;
+    private static final int MAXIMUM_INFLATED_SIZE = MAXIMUM_OBJECT_SIZE + 4;
+    private static final int DEFLATE_BUFFER_SIZE = 8192;
+
+    /**
+     * Compressed messages are inflated by every pipeline, so a sender decides alone what it compresses
+     */
+    static void addCodecs(ChannelPipeline pipeline) {
+        // writes of one event loop iteration are flushed together, also when they come from other threads
+        pipeline.addLast(new FlushConsolidationHandler(MAXIMUM_CONSOLIDATED_FLUSHES, true));
+        pipeline.addLast(new ObjectEncoder(), new ObjectDecoder(MAXIMUM_OBJECT_SIZE, ClassResolvers.cacheDisabled(null)),
+                new CompressedEnvelopeDecoder());
+    }
+
+    /**
+     * Encodes a message into a pooled direct buffer in the same format as {@link ObjectEncoder} does. The buffer passes
+     * through the pipeline's object encoder untouched, so it can be written to many channels as retained duplicates
+     */
+    static ByteBuf encode(Serializable message) {
+        var buffer = PooledByteBufAllocator.DEFAULT.directBuffer();
+        try {
+            payloadEncoder.encode(message, buffer);
+            return buffer;
+        } catch (Exception ex) {
+            buffer.release();
+            throw new IllegalStateException("Wasn't able to encode " + message, ex);
+        }
+    }
+
+    /**
+     * @param compress - true if the encoded message is compressed with deflate and sent in {@link CompressedEnvelope}
+     */
+    static ByteBuf encode(Serializable message, boolean compress) {
+        if (!compress) {
+            return encode(message);
+        }
+        var frame = encode(message);
+        try {
+            return encode(new CompressedEnvelope(deflate(frame)));
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static byte[] deflate(ByteBuf frame) {
+        var deflater = new Deflater();
+        try {
+            deflater.setInput(ByteBufUtil.getBytes(frame));
+            deflater.finish();
+            var deflated = new ByteArrayOutputStream(frame.readableBytes() / 2);
+            var buffer = new byte[DEFLATE_BUFFER_SIZE];
+            while (!deflater.finished()) {
+                deflated.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return deflated.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Inflated frame is bounded like a frame read from the socket, so a small message can't expand without a limit
+     */
+    private static ByteBuf inflate(byte[] deflatedMessage) throws DataFormatException {
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(deflatedMessage);
+            var frame = Unpooled.buffer(Math.min(deflatedMessage.length * 4, MAXIMUM_INFLATED_SIZE), MAXIMUM_INFLATED_SIZE);
+            var buffer = new byte[DEFLATE_BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new CorruptedFrameException("Compressed message is truncated");
+                }
+                if (frame.readableBytes() + inflated > MAXIMUM_INFLATED_SIZE) {
+                    throw new TooLongFrameException("Compressed message is larger than " + MAXIMUM_INFLATED_SIZE + " bytes");
+                }
+                frame.writeBytes(buffer, 0, inflated);
+            }
+            return frame;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static class PayloadEncoder extends ObjectEncoder {
+
+        void encode(Serializable message, ByteBuf out) throws Exception {
+            // object encoder doesn't use the channel context
+            encode(null, message, out);
+        }
+    }
+
+    /**
+     * Decodes an inflated frame the same way as the object decoder of the pipeline does
+     */
+    private static class PayloadDecoder extends ObjectDecoder {
+
+        PayloadDecoder() {
+            super(MAXIMUM_OBJECT_SIZE, ClassResolvers.cacheDisabled(null));
+        }
+
+        Object decode(ByteBuf frame) throws Exception {
+            // object decoder doesn't use the channel context
+            var message = decode(null, frame);
+            if (message == null || frame.isReadable()) {
+                throw new CorruptedFrameException("Compressed message isn't one frame");
+            }
+            return message;
+        }
+    }
+
+    /**
+     * Replaces a compressed message with the message that it wraps
+     */
+    private static class CompressedEnvelopeDecoder extends MessageToMessageDecoder<CompressedEnvelope> {
+        private final PayloadDecoder payloadDecoder = new PayloadDecoder();
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, CompressedEnvelope envelope, List<Object> out) throws Exception {
+            var frame = inflate(envelope.deflatedMessage());
+            try {
+                out.add(payloadDecoder.decode(frame));
+            } finally {
+                frame.release();
+            }
+        }
+    }
+}
@@ -3,6 +3,8 @@ package atk.app.network.netty;
 import atk.app.lifecycle.ThreadSafeLifecycle;
 import atk.app.network.NetworkServer;
 import atk.app.network.TcpRequest;
+import atk.app.network.TransportConfig;
+import atk.app.runtime.SharedRuntime;
 import atk.app.util.ExceptionUtil;
 import atk.app.util.channel.ReadableChannel;
 import io.netty.bootstrap.ServerBootstrap;
@@ -10,17 +12,16 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.serialization.ClassResolvers;
-import io.netty.handler.codec.serialization.ObjectDecoder;
-import io.netty.handler.codec.serialization.ObjectEncoder;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.Future;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -31,42 +32,111 @@ import org.slf4j.LoggerFactory;
 public class NettyServer extends ThreadSafeLifecycle implements NetworkServer<Void> {
     private static final Logger logger = LoggerFactory.getLogger(NettyServer.class);
     private final ServerBootstrap bootstrap;
+    // groups owned by this server, they are shut down on close
     private final List<EventLoopGroup> workerGroups;
     private final int port;
+    private final int acceptors;
     private final ReadableChannel<TcpRequest> readableChannel;
-    private volatile Channel networkChannel;
+    private volatile List<Channel> networkChannels;
+    private final Map<String, atk.app.util.channel.Channel<TcpRequest>> clusterChannels = new ConcurrentHashMap<>();
+    private final InboundRateLimiter inboundRateLimiter;
 
-    public NettyServer(int port, atk.app.util.channel.Channel<TcpRequest> channel, ExecutorService lifecycleExecutor) {
+    /**
+     * @param egressScheduler - egress budget of the member. The client of the same member should use the same one
+     */
+    public NettyServer(int port, atk.app.util.channel.Channel<TcpRequest> channel, ExecutorService lifecycleExecutor,
+                       TransportConfig transportConfig, EgressScheduler egressScheduler) {
         super(lifecycleExecutor);
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1, lifecycleExecutor);
-        EventLoopGroup workerGroup = new NioEventLoopGroup(1, lifecycleExecutor);
+        this.inboundRateLimiter = new InboundRateLimiter(transportConfig.inboundRequestsPerSecondPerPeer,
+                transportConfig.inboundBytesPerSecondPerPeer, transportConfig.inboundPeerKey);
+        var transports = new NettyTransports(transportConfig.transport);
+        if (transportConfig.serverAcceptors > 1 && !transports.isEpoll()) {
+            logger.warn("{} acceptors are requested, but SO_REUSEPORT isn't supported by nio transport. Use one acceptor",
+                    transportConfig.serverAcceptors);
+        }
+        this.acceptors = transports.isEpoll() ? transportConfig.serverAcceptors : 1;
+        // every acceptor has its own thread
+        EventLoopGroup bossGroup = transports.newEventLoopGroup(acceptors, lifecycleExecutor);
+        // I/O threads only decode and encode messages, requests are processed by request handler threads
+        EventLoopGroup workerGroup = transports.newEventLoopGroup(transportConfig.serverWorkerThreads, lifecycleExecutor);
         this.port = port;
         this.workerGroups = List.of(bossGroup, workerGroup);
         this.bootstrap = new ServerBootstrap();
         this.readableChannel = channel;
         bootstrap.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(transports.serverChannelClass())
                 .handler(new LoggingHandler(LogLevel.INFO))
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     public void initChannel(SocketChannel ch) {
                         ChannelPipeline p = ch.pipeline();
-                        p.addLast(
-                                new ObjectEncoder(),
-                                new ObjectDecoder(ClassResolvers.cacheDisabled(null)),
-                                new NettyServerHandler(channel));
+                        // excess traffic of a peer is rejected before it's decoded
+                        p.addLast(inboundRateLimiter);
+                        NettyCodecs.addCodecs(p);
+                        p.addLast(inboundRateLimiter.requestLimiter());
+                        p.addLast(new NettyServerHandler(channel, clusterChannels::get, egressScheduler, transportConfig.compression));
+                    }
+                });
+        transports.configure(bootstrap);
+        if (acceptors > 1) {
+            transports.enableReusePort(bootstrap);
+        }
+        logger.debug("Use {} transport", transports.isEpoll() ? "epoll" : "nio");
+    }
+
+    /**
+     * Server accepts and serves connections on the event loop group of the runtime. Transport and I/O threads of the runtime
+     * override the ones of the config, the group isn't shut down on close
+     *
+     * @param egressScheduler - egress budget of the member. The client of the same member should use the same one
+     */
+    public NettyServer(int port, atk.app.util.channel.Channel<TcpRequest> channel, SharedRuntime runtime,
+                       TransportConfig transportConfig, EgressScheduler egressScheduler) {
+        super(runtime.lifecycleExecutor());
+        this.inboundRateLimiter = new InboundRateLimiter(transportConfig.inboundRequestsPerSecondPerPeer,
+                transportConfig.inboundBytesPerSecondPerPeer, transportConfig.inboundPeerKey);
+        var transports = runtime.transports();
+        this.acceptors = 1;
+        this.port = port;
+        this.workerGroups = List.of();
+        this.bootstrap = new ServerBootstrap();
+        this.readableChannel = channel;
+        bootstrap.group(runtime.eventLoopGroup())
+                .channel(transports.serverChannelClass())
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    public void initChannel(SocketChannel ch) {
+                        ChannelPipeline p = ch.pipeline();
+                        // excess traffic of a peer is rejected before it's decoded
+                        p.addLast(inboundRateLimiter);
+                        NettyCodecs.addCodecs(p);
+                        p.addLast(inboundRateLimiter.requestLimiter());
+                        p.addLast(new NettyServerHandler(channel, clusterChannels::get, egressScheduler, transportConfig.compression));
                     }
                 });
+        transports.configure(bootstrap);
+    }
+
+    /**
+     * @return - counters of throttled peers by their {@link TransportConfig.PeerKey keys}
+     */
+    public Map<Object, InboundRateLimiter.ThrottleStats> getThrottledPeers() {
+        return inboundRateLimiter.getThrottledPeers();
     }
 
     @Override
     protected void start0() {
+        var channels = new ArrayList<Channel>();
         try {
-            var channelFuture = bootstrap.bind(port).sync();
-            channelFuture.get();
-            this.networkChannel = channelFuture.channel();
-            logger.debug("Successfully bind to port {}", port);
+            for (int i = 0; i < acceptors; i++) {
+                var channelFuture = bootstrap.bind(port).sync();
+                channelFuture.get();
+                channels.add(channelFuture.channel());
+            }
+            this.networkChannels = channels;
+            logger.debug("Successfully bind {} acceptors to port {}", acceptors, port);
         } catch (Exception ex) {
+            channels.forEach(Channel::close);
             logger.error("Wasn't able to bind to port {}", port, ex);
             throw new RuntimeException(ex);
         }
@@ -74,15 +144,17 @@ public class NettyServer extends ThreadSafeLifecycle implements NetworkServer<Vo
 
     @Override
     protected void stop0() {
-        if (networkChannel == null) {
+        if (networkChannels == null) {
             return;
         }
         try {
-            networkChannel.close().get(10, TimeUnit.SECONDS);
+            for (Channel networkChannel : networkChannels) {
+                networkChannel.close().get(10, TimeUnit.SECONDS);
+            }
         } catch (InterruptedException | ExecutionException | TimeoutException e) {
             throw new RuntimeException(e);
         }
-        networkChannel = null;
+        networkChannels = null;
     }
 
     @Override
@@ -102,4 +174,50 @@ public class NettyServer extends ThreadSafeLifecycle implements NetworkServer<Vo
     public ReadableChannel<TcpRequest> getReceivedRequests() {
         return readableChannel;
     }
+
+    /**
+     * Creates a server of one logical cluster that shares the port, connections and threads of this server. It receives
+     * only requests that are sent by a {@link NettyClient#forCluster(String, EgressScheduler) cluster client} with the same cluster id.
+     * Cluster server receives requests while it's started, this server should be started by its owner
+     */
+    public NetworkServer<Void> clusterServer(String clusterId, atk.app.util.channel.Channel<TcpRequest> channel) {
+        return new ClusterServer(clusterId, channel);
+    }
+
+    private class ClusterServer implements NetworkServer<Void> {
+        private final String clusterId;
+        private final atk.app.util.channel.Channel<TcpRequest> channel;
+
+        private ClusterServer(String clusterId, atk.app.util.channel.Channel<TcpRequest> channel) {
+            this.clusterId = clusterId;
+            this.channel = channel;
+        }
+
+        @Override
+        public CompletableFuture<Void> start() {
+            if (clusterChannels.putIfAbsent(clusterId, channel) != null) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Cluster " + clusterId + " is already served"));
+            }
+            logger.debug("Start serving cluster {} on port {}", clusterId, port);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> stop() {
+            clusterChannels.remove(clusterId, channel);
+            logger.debug("Stop serving cluster {} on port {}", clusterId, port);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void close() {
+            stop();
+            ExceptionUtil.ignoreThrownExceptions(channel::close, logger);
+        }
+
+        @Override
+        public ReadableChannel<TcpRequest> getReceivedRequests() {
+            return channel;
+        }
+    }
 }
@@ -15,11 +15,22 @@
  */
 package atk.app.network.netty;
 
+import atk.app.network.ClusterEnvelope;
+import atk.app.network.DeadlineEnvelope;
 import atk.app.network.NetworkRequest;
+import atk.app.network.NetworkResponse;
 import atk.app.network.TcpRequest;
+import atk.app.network.TrafficClass;
 import atk.app.util.channel.WriteableChannel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,9 +38,28 @@ public class NettyServerHandler extends ChannelInboundHandlerAdapter {
 
     private static final Logger logger = LoggerFactory.getLogger(NettyServerHandler.class);
     private final WriteableChannel<TcpRequest> requestsChannel;
+    private final Function<String, WriteableChannel<TcpRequest>> clusterChannels;
+    private final EgressScheduler egressScheduler;
+    private final boolean compressBulkResponses;
+    // responses of the connection of this handler that aren't sent yet
+    private final Set<CompletableFuture<NetworkResponse>> pendingResponses = ConcurrentHashMap.newKeySet();
 
     public NettyServerHandler(WriteableChannel<TcpRequest> requestsChannel) {
+        this(requestsChannel, clusterId -> null, new EgressScheduler(0, 0, Runnable::run), false);
+    }
+
+    /**
+     * @param requestsChannel - receives requests that aren't wrapped in {@link ClusterEnvelope}
+     * @param clusterChannels - returns a channel that receives requests of a cluster or null if the cluster isn't served
+     * @param egressScheduler       - egress budget of responses
+     * @param compressBulkResponses - true if responses of the bulk traffic class are compressed
+     */
+    public NettyServerHandler(WriteableChannel<TcpRequest> requestsChannel, Function<String, WriteableChannel<TcpRequest>> clusterChannels,
+                              EgressScheduler egressScheduler, boolean compressBulkResponses) {
         this.requestsChannel = requestsChannel;
+        this.clusterChannels = clusterChannels;
+        this.egressScheduler = egressScheduler;
+        this.compressBulkResponses = compressBulkResponses;
     }
 
     @Override
@@ -44,28 +74,96 @@ public class NettyServerHandler extends ChannelInboundHandlerAdapter {
         logger.info("Client disconnected {}", ctx.channel().remoteAddress());
     }
 
+    /**
+     * Requester closes the connection when it gives up, so a request that isn't answered yet is cancelled
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        pendingResponses.forEach(response -> response.cancel(false));
+        super.channelInactive(ctx);
+    }
+
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         logger.info("Received {} from {}", msg, ctx.channel().remoteAddress());
-        if (msg instanceof NetworkRequest) {
-            var swimRequest = new TcpRequest((NetworkRequest) msg);
-            swimRequest.getResponseHandler().whenComplete((response, throwable) -> {
-                if (response != null) {
-                    logger.info("Message send {}", msg);
-                    ctx.writeAndFlush(response);
-                } else {
-                    logger.warn("Didn't send response for {}", swimRequest, throwable);
-                }
-            });
-            requestsChannel.push(swimRequest);
+        if (msg instanceof ClusterEnvelope envelope) {
+            var clusterChannel = clusterChannels.apply(envelope.clusterId());
+            if (clusterChannel == null) {
+                // requester of an unknown cluster isn't an error of this server, it fails when the connection is closed
+                logger.warn("Doesn't serve cluster {}, close connection from {}", envelope.clusterId(), ctx.channel().remoteAddress());
+                ctx.close();
+                return;
+            }
+            // responses are wrapped into the envelope of the request
+            processRequest(ctx, envelope.message(), clusterChannel, response -> new ClusterEnvelope(envelope.clusterId(), response));
         } else {
-            throw new IllegalStateException("Doesn't support message " + msg);
+            processRequest(ctx, msg, requestsChannel, response -> response);
         }
     }
 
-    @Override
-    public void channelReadComplete(ChannelHandlerContext ctx) {
-        ctx.flush();
+    /**
+     * @param message - request or request wrapped with its deadline
+     */
+    private void processRequest(ChannelHandlerContext ctx, Object message, WriteableChannel<TcpRequest> channel,
+                                Function<NetworkResponse, Object> responseWrapper) {
+        NetworkRequest request;
+        Instant deadline = null;
+        if (message instanceof DeadlineEnvelope envelope) {
+            request = envelope.request();
+            deadline = Instant.now().plusMillis(envelope.timeoutMillis());
+        } else if (message instanceof NetworkRequest networkRequest) {
+            request = networkRequest;
+        } else {
+            throw new IllegalStateException("Doesn't support message " + message);
+        }
+        var swimRequest = new TcpRequest(request, chunk -> write(ctx, chunk, responseWrapper), deadline);
+        var responseHandler = swimRequest.getResponseHandler();
+        pendingResponses.add(responseHandler);
+        responseHandler.whenComplete((response, throwable) -> pendingResponses.remove(responseHandler));
+        swimRequest.getResponseHandler().whenComplete((response, throwable) -> {
+            if (response != null) {
+                write(ctx, response, responseWrapper).whenComplete((unused, writeThrowable) -> {
+                    if (writeThrowable != null) {
+                        logger.warn("Didn't send response for {}", request, writeThrowable);
+                    } else {
+                        logger.info("Message send {}", request);
+                    }
+                });
+            } else {
+                logger.warn("Didn't send response for {}", swimRequest, throwable);
+            }
+        });
+        // event loop never waits for free space, the requester fails fast and retries or probes indirectly
+        if (!channel.tryPush(swimRequest)) {
+            logger.warn("Reject {} from {}, request queue is full", request, ctx.channel().remoteAddress());
+            responseHandler.completeExceptionally(new RejectedExecutionException("Request queue is full"));
+            ctx.close();
+        }
+    }
+
+    /**
+     * Response is encoded to know its size and is written when it gets the egress budget. Bulk responses are charged
+     * with their compressed size
+     */
+    private CompletableFuture<Void> write(ChannelHandlerContext ctx, NetworkResponse response, Function<NetworkResponse, Object> responseWrapper) {
+        var compress = compressBulkResponses && response.trafficClass() == TrafficClass.BULK;
+        var encodedResponse = NettyCodecs.encode((Serializable) responseWrapper.apply(response), compress);
+        var writeResult = new CompletableFuture<Void>();
+        egressScheduler.acquire(response.trafficClass(), encodedResponse.readableBytes()).whenComplete((unused, throwable) -> {
+            if (throwable != null) {
+                encodedResponse.release();
+                writeResult.completeExceptionally(throwable);
+                return;
+            }
+            ctx.writeAndFlush(encodedResponse).addListener(future -> {
+                if (future.isSuccess()) {
+                    writeResult.complete(null);
+                } else {
+                    writeResult.completeExceptionally(future.cause());
+                }
+            });
+        });
+        return writeResult;
     }
 
     @Override
@@ -0,0 +1,85 @@
+package atk.app.network.netty;
+
+import atk.app.network.TransportConfig;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * Netty classes and options of the transport selected by {@link TransportConfig#transport}
+ */
+public class NettyTransports {
+    private final boolean epoll;
+
+    public NettyTransports(TransportConfig.Transport transport) {
+        this.epoll = switch (transport) {
+            case AUTO -> Epoll.isAvailable();
+            case EPOLL -> {
+                if (!Epoll.isAvailable()) {
+                    throw new IllegalStateException("Native epoll transport isn't available", Epoll.unavailabilityCause());
+                }
+                yield true;
+            }
+            case NIO -> false;
+        };
+    }
+
+    public boolean isEpoll() {
+        return epoll;
+    }
+
+    EventLoopGroup newEventLoopGroup(int threads, Executor executor) {
+        return epoll ? new EpollEventLoopGroup(threads, executor) : new NioEventLoopGroup(threads, executor);
+    }
+
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        return epoll ? new EpollEventLoopGroup(threads) : new NioEventLoopGroup(threads);
+    }
+
+    Class<? extends ServerChannel> serverChannelClass() {
+        return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    Class<? extends SocketChannel> socketChannelClass() {
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    /**
+     * Probe messages are small request/response pairs, so they shouldn't wait for Nagle's algorithm or delayed acks
+     */
+    void configure(ServerBootstrap bootstrap) {
+        bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
+        if (epoll) {
+            bootstrap.childOption(EpollChannelOption.TCP_QUICKACK, true);
+        }
+    }
+
+    /**
+     * Lets many server sockets bind to the same port
+     */
+    void enableReusePort(ServerBootstrap bootstrap) {
+        if (!epoll) {
+            throw new IllegalStateException("SO_REUSEPORT is supported only by the epoll transport");
+        }
+        bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+    }
+
+    void configure(Bootstrap bootstrap) {
+        bootstrap.option(ChannelOption.TCP_NODELAY, true);
+        if (epoll) {
+            bootstrap.option(EpollChannelOption.TCP_QUICKACK, true);
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package atk.app.network.protocol;
 
 import atk.app.member.MemberList;
+import atk.app.member.NetworkCoordinate;
 import atk.app.network.NetworkResponse;
 import java.util.List;
 
 /**
  *
  * @param memberStates - is a diff between the local state and pinged state
+ * @param coordinate - network coordinate of the member that sends the ack, null if it's unknown
  * */
-public record AckResponse(List<MemberList.MemberState> memberStates) implements NetworkResponse {
+public record AckResponse(List<MemberList.MemberState> memberStates, NetworkCoordinate coordinate) implements NetworkResponse {
+
+    public AckResponse(List<MemberList.MemberState> memberStates) {
+        this(memberStates, null);
+    }
 }
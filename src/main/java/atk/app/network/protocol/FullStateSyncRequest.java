@@ -2,7 +2,12 @@ package atk.app.network.protocol;
 
 import atk.app.member.MemberList;
 import atk.app.network.NetworkRequest;
+import atk.app.network.TrafficClass;
 
 public record FullStateSyncRequest(MemberList.MemberState memberState) implements NetworkRequest {
 
+    @Override
+    public TrafficClass trafficClass() {
+        return TrafficClass.BULK;
+    }
 }
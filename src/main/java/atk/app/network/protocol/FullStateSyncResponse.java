@@ -1,8 +1,24 @@
 package atk.app.network.protocol;
 
 import atk.app.member.MemberList;
-import atk.app.network.NetworkResponse;
+import atk.app.network.ChunkedResponse;
+import atk.app.network.TrafficClass;
 import java.util.List;
 
-public record FullStateSyncResponse(List<MemberList.MemberState> memberStates) implements NetworkResponse {
+/**
+ * Full state is streamed as a sequence of chunks, so neither side has to hold the whole serialized state
+ *
+ * @param memberStates - part of the member states
+ * @param lastChunk    - true if this is the last chunk of the full state
+ */
+public record FullStateSyncResponse(List<MemberList.MemberState> memberStates, boolean lastChunk) implements ChunkedResponse {
+
+    public FullStateSyncResponse(List<MemberList.MemberState> memberStates) {
+        this(memberStates, true);
+    }
+
+    @Override
+    public TrafficClass trafficClass() {
+        return TrafficClass.BULK;
+    }
 }
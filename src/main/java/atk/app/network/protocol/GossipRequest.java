@@ -0,0 +1,14 @@
+package atk.app.network.protocol;
+
+import atk.app.member.MemberList;
+import atk.app.network.NetworkRequest;
+import java.util.List;
+
+/**
+ * Pushes recent member state changes. Sender doesn't wait for the response
+ *
+ * @param memberStates - changed member states
+ */
+public record GossipRequest(List<MemberList.MemberState> memberStates) implements NetworkRequest {
+
+}
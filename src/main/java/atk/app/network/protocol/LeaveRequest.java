@@ -0,0 +1,11 @@
+package atk.app.network.protocol;
+
+import atk.app.member.MemberList;
+import atk.app.network.NetworkRequest;
+
+/**
+ * @param memberState - left state of the member that sends the request
+ */
+public record LeaveRequest(MemberList.MemberState memberState) implements NetworkRequest {
+
+}
@@ -3,19 +3,31 @@ package atk.app.network.protocol;
 import atk.app.lifecycle.LifecycleStates;
 import atk.app.lifecycle.ThreadSafeLifecycle;
 import atk.app.member.MemberList;
+import atk.app.member.NetworkCoordinate;
 import atk.app.network.NetworkResponse;
 import atk.app.network.NetworkServer;
 import atk.app.network.TcpRequest;
 import atk.app.network.NetworkClient;
 import atk.app.util.ConcurrencyUtil;
 import atk.app.util.channel.ReadableChannel;
+import java.net.SocketAddress;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,100 +36,313 @@ import org.slf4j.LoggerFactory;
  */
 public class NetworkRequestHandler extends ThreadSafeLifecycle {
     private static final Logger logger = LoggerFactory.getLogger(NetworkRequestHandler.class);
+    private static final int DRAIN_BATCH_SIZE = 32;
+    // requester joins an in-flight ping that gives up at most this part of the request timeout earlier than it does
+    private static final int JOINED_DEADLINE_TOLERANCE_DIVISOR = 10;
     private final MemberList memberList;
     private final NetworkClient networkClient;
     private final Duration requestMaximumTimeout;
+    private final int fullStateSyncChunkSize;
     private final ExecutorService requestHandlerExecutor;
     private final ReadableChannel<TcpRequest> receivedRequestsChannel;
-    private Future<?> taskFuture;
+    private final int requestHandlerThreads;
+    private final List<Future<?>> taskFutures = new ArrayList<>();
+    // null if requests are pulled by own threads
+    private final Executor memberExecutor;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    // responses that are being processed, stop waits for them
+    private final Set<CompletableFuture<NetworkResponse>> inFlightResponses = ConcurrentHashMap.newKeySet();
+    // pings of probe targets that are sent on behalf of indirect ping requests
+    private final Map<SocketAddress, IndirectPing> inFlightIndirectPings = new ConcurrentHashMap<>();
+    private volatile Supplier<NetworkCoordinate> coordinateSupplier = () -> null;
 
     public NetworkRequestHandler(ExecutorService lifecycleExecutor, MemberList memberList, NetworkServer<Void> networkServer, NetworkClient networkClient,
                                  Duration requestMaximumTimeout) {
+        this(lifecycleExecutor, memberList, networkServer, networkClient, requestMaximumTimeout, 256, 1);
+    }
+
+    /**
+     * @param fullStateSyncChunkSize - maximum number of member states in one chunk of a full state sync response
+     * @param requestHandlerThreads  - number of threads that concurrently process received requests
+     */
+    public NetworkRequestHandler(ExecutorService lifecycleExecutor, MemberList memberList, NetworkServer<Void> networkServer, NetworkClient networkClient,
+                                 Duration requestMaximumTimeout, int fullStateSyncChunkSize, int requestHandlerThreads) {
         super(lifecycleExecutor);
+        this.requestHandlerThreads = requestHandlerThreads;
+        this.fullStateSyncChunkSize = fullStateSyncChunkSize;
         this.memberList = memberList;
         this.networkClient = networkClient;
         this.requestMaximumTimeout = requestMaximumTimeout;
         this.receivedRequestsChannel = networkServer.getReceivedRequests();
-        this.requestHandlerExecutor = Executors.newSingleThreadExecutor();
+        this.requestHandlerExecutor = Executors.newFixedThreadPool(requestHandlerThreads);
+        this.memberExecutor = null;
+    }
+
+    /**
+     * Received requests are processed by the member executor when they arrive, no thread waits for them
+     */
+    public NetworkRequestHandler(ExecutorService lifecycleExecutor, MemberList memberList, NetworkServer<Void> networkServer, NetworkClient networkClient,
+                                 Duration requestMaximumTimeout, int fullStateSyncChunkSize, Executor memberExecutor) {
+        super(lifecycleExecutor);
+        this.requestHandlerThreads = 0;
+        this.fullStateSyncChunkSize = fullStateSyncChunkSize;
+        this.memberList = memberList;
+        this.networkClient = networkClient;
+        this.requestMaximumTimeout = requestMaximumTimeout;
+        this.receivedRequestsChannel = networkServer.getReceivedRequests();
+        this.requestHandlerExecutor = null;
+        this.memberExecutor = memberExecutor;
+    }
+
+    /**
+     * @param coordinateSupplier - network coordinate of this member that is piggybacked on acks
+     */
+    public void setCoordinateSupplier(Supplier<NetworkCoordinate> coordinateSupplier) {
+        this.coordinateSupplier = coordinateSupplier;
     }
 
     @Override
     protected void start0() {
-        this.taskFuture = requestHandlerExecutor.submit(() -> {
-            while (hasState(LifecycleStates.STARTED)) {
-                TcpRequest tcpRequest = receivedRequestsChannel.pull(Duration.ofSeconds(10));
-                if (tcpRequest != null) {
-                    logger.debug("Start processing {}", tcpRequest.getClass());
+        if (memberExecutor != null) {
+            receivedRequestsChannel.setPushListener(this::scheduleDrain);
+            //requests could be received before start
+            scheduleDrain();
+            return;
+        }
+        // received requests channel supports concurrent consumers
+        for (int i = 0; i < requestHandlerThreads; i++) {
+            taskFutures.add(requestHandlerExecutor.submit(() -> {
+                while (hasState(LifecycleStates.STARTED)) {
+                    TcpRequest tcpRequest = receivedRequestsChannel.pull(Duration.ofSeconds(10));
+                    if (tcpRequest != null) {
+                        logger.debug("Start processing {}", tcpRequest.getClass());
+                        processNetworkRequest(tcpRequest);
+                    }
+                }
+            }));
+        }
+    }
+
+    private void scheduleDrain() {
+        if (!hasState(LifecycleStates.STARTED) || !drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            memberExecutor.execute(this::drainReceivedRequests);
+        } catch (RejectedExecutionException ex) {
+            drainScheduled.set(false);
+            logger.warn("Member executor is busy, received requests wait for the next push");
+        }
+    }
+
+    /**
+     * Processes a batch of received requests. Batch is limited, so other tasks of the member aren't delayed by a burst of requests
+     */
+    private void drainReceivedRequests() {
+        try {
+            for (int i = 0; i < DRAIN_BATCH_SIZE && hasState(LifecycleStates.STARTED); i++) {
+                TcpRequest tcpRequest = receivedRequestsChannel.pull(Duration.ZERO);
+                if (tcpRequest == null) {
+                    break;
+                }
+                logger.debug("Start processing {}", tcpRequest.getClass());
+                try {
                     processNetworkRequest(tcpRequest);
+                } catch (Exception ex) {
+                    tcpRequest.getResponseHandler().completeExceptionally(ex);
                 }
             }
-        });
-
+        } finally {
+            drainScheduled.set(false);
+        }
+        //a request could be pushed after the last pull, but before the flag is reset
+        scheduleDrain();
     }
 
     @Override
     protected void stop0() {
-        taskFuture.cancel(true);
+        taskFutures.forEach(taskFuture -> taskFuture.cancel(true));
+        taskFutures.clear();
+    }
+
+    /**
+     * Processes requests that are already received and completes when all in-flight requests are answered
+     * or the maximum request timeout expires. Network server should be stopped before, so no new requests are received
+     */
+    @Override
+    protected CompletableFuture<Void> stopAsync0() {
+        stop0();
+        TcpRequest tcpRequest;
+        while ((tcpRequest = receivedRequestsChannel.pull(Duration.ZERO)) != null) {
+            try {
+                processNetworkRequest(tcpRequest);
+            } catch (Exception ex) {
+                tcpRequest.getResponseHandler().completeExceptionally(ex);
+            }
+        }
+        logger.debug("Wait for {} in-flight requests", inFlightResponses.size());
+        return CompletableFuture.allOf(inFlightResponses.toArray(new CompletableFuture<?>[0]))
+                .orTimeout(requestMaximumTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((unused, throwable) -> {
+                    if (throwable != null) {
+                        logger.warn("{} in-flight requests weren't answered on stop", inFlightResponses.size());
+                    }
+                    return null;
+                });
     }
 
     @Override
     protected void close0() {
-        ConcurrencyUtil.shutdownExecutor(requestHandlerExecutor);
+        if (requestHandlerExecutor != null) {
+            ConcurrencyUtil.shutdownExecutor(requestHandlerExecutor);
+        }
     }
 
     /**
      * Processes network request. Processing shouldn't block the network request thread
      */
     private void processNetworkRequest(TcpRequest tcpRequest) {
+        var responseHandler = tcpRequest.getResponseHandler();
+        inFlightResponses.add(responseHandler);
+        responseHandler.whenComplete((response, throwable) -> inFlightResponses.remove(responseHandler));
         var networkRequest = tcpRequest.getRequest();
+        // nobody waits for an ack of an abandoned probe. Leave and gossip change member states, so they are still applied
+        if (tcpRequest.isAbandoned() && !(networkRequest instanceof LeaveRequest || networkRequest instanceof GossipRequest)) {
+            logger.debug("Skip {}, its requester doesn't wait for the response", networkRequest);
+            responseHandler.completeExceptionally(new TimeoutException("Deadline of " + networkRequest + " expired"));
+            return;
+        }
         if (networkRequest instanceof FullStateSyncRequest) {
-            processFullStateSyncRequest((FullStateSyncRequest) networkRequest, tcpRequest.getResponseHandler());
+            processFullStateSyncRequest((FullStateSyncRequest) networkRequest, tcpRequest);
         } else if (networkRequest instanceof PingRequest) {
             processPingRequest((PingRequest) networkRequest, tcpRequest.getResponseHandler());
         } else if (networkRequest instanceof IndirectPingRequest) {
-            processIndirectPingRequest((IndirectPingRequest) networkRequest, tcpRequest.getResponseHandler());
+            processIndirectPingRequest((IndirectPingRequest) networkRequest, tcpRequest);
+        } else if (networkRequest instanceof LeaveRequest) {
+            processLeaveRequest((LeaveRequest) networkRequest, tcpRequest.getResponseHandler());
+        } else if (networkRequest instanceof GossipRequest) {
+            processGossipRequest((GossipRequest) networkRequest, tcpRequest.getResponseHandler());
         } else {
             logger.error("Received unsupported network request {}", networkRequest.getClass());
             throw new IllegalStateException("Unsupported message " + networkRequest);
         }
     }
 
-    private void processFullStateSyncRequest(FullStateSyncRequest request, CompletableFuture<NetworkResponse> responseHandler) {
-        var response = new FullStateSyncResponse(memberList.getMemberStates());
-        var requestMap = Map.of(request.memberState().memberName, request.memberState());
-        memberList.update(requestMap);
+    private void processFullStateSyncRequest(FullStateSyncRequest request, TcpRequest tcpRequest) {
+        // joining member doesn't know anybody, so every member is sent with its name and address
+        var memberStates = memberList.getMemberStatesSnapshot().withFullDefinitions();
+        memberList.update(List.of(request.memberState()));
 
-        responseHandler.complete(response);
+        sendFullStateChunk(memberStates, 0, tcpRequest);
+    }
+
+    /**
+     * Sends member states starting from fromIndex in chunks. A next chunk is serialized only when the previous one is written,
+     * so memory used by a sync is bounded by the chunk size
+     */
+    private void sendFullStateChunk(List<MemberList.MemberState> memberStates, int fromIndex, TcpRequest tcpRequest) {
+        var toIndex = Math.min(fromIndex + fullStateSyncChunkSize, memberStates.size());
+        // state that fits into one chunk is sent as the cached snapshot
+        List<MemberList.MemberState> chunk = fromIndex == 0 && toIndex == memberStates.size()
+                ? memberStates : new ArrayList<>(memberStates.subList(fromIndex, toIndex));
+        if (toIndex == memberStates.size()) {
+            tcpRequest.getResponseHandler().complete(new FullStateSyncResponse(chunk, true));
+            return;
+        }
+        tcpRequest.sendChunk(new FullStateSyncResponse(chunk, false))
+                .whenComplete((unused, throwable) -> {
+                    if (throwable != null) {
+                        logger.error("Wasn't able to send full state chunk", throwable);
+                        tcpRequest.getResponseHandler().completeExceptionally(throwable);
+                    } else {
+                        sendFullStateChunk(memberStates, toIndex, tcpRequest);
+                    }
+                });
     }
 
     private void processPingRequest(PingRequest request, CompletableFuture<NetworkResponse> responseHandler) {
-        var response = new AckResponse(memberList.getMemberStates());
+        var response = new AckResponse(memberList.getMemberStatesSnapshot(), coordinateSupplier.get());
 
-        var requestMap = request.memberStates().stream().collect(Collectors.toMap(k -> k.memberName, k -> k));
-        memberList.update(requestMap);
+        memberList.update(request.memberStates());
 
         responseHandler.complete(response);
     }
 
-    private void processIndirectPingRequest(IndirectPingRequest request, CompletableFuture<NetworkResponse> responseHandler) {
+    private void processLeaveRequest(LeaveRequest request, CompletableFuture<NetworkResponse> responseHandler) {
+        memberList.update(List.of(request.memberState()));
+        //leaving member doesn't need our state
+        responseHandler.complete(new AckResponse(List.of()));
+    }
+
+    private void processGossipRequest(GossipRequest request, CompletableFuture<NetworkResponse> responseHandler) {
+        memberList.update(request.memberStates());
+        //gossip sender doesn't process the response
+        responseHandler.complete(new AckResponse(List.of()));
+    }
+
+    /**
+     * Indirect pings of the same target that arrive while a ping to it is in flight share that ping, every requester
+     * receives the ack. It unloads a target when many members suspect it at the same moment. The ping waits only for
+     * the time that is left to the requester that started it, so a requester that has much more time left doesn't
+     * join it and starts its own ping, which later requesters join
+     */
+    private void processIndirectPingRequest(IndirectPingRequest request, TcpRequest tcpRequest) {
+        var responseHandler = tcpRequest.getResponseHandler();
         //update your local state based on the request data
-        var requestMap = request.memberStates().stream().collect(Collectors.toMap(k -> k.memberName, k -> k));
-        memberList.update(requestMap);
+        memberList.update(request.memberStates());
 
-        networkClient.send(new PingRequest(memberList.getMemberStates()), request.probeTargetAddress(), requestMaximumTimeout)
-                .whenComplete((response, throwable) -> {
-                    if (throwable != null) {
-                        logger.error("Wasn't able to send {} to {}", request, request.probeTargetAddress());
-                    } else if (response instanceof AckResponse) {
-                        var ackResponseMap = ((AckResponse) response).memberStates().stream().collect(Collectors.toMap(k -> k.memberName, k -> k));
-                        memberList.update(ackResponseMap);
+        var probeTarget = request.probeTargetAddress();
+        var remainingTime = tcpRequest.getRemainingTime(requestMaximumTimeout);
+        var ping = new IndirectPing(new CompletableFuture<>(), Instant.now().plus(remainingTime));
+        var latestJoinedDeadline = ping.deadline().minus(requestMaximumTimeout.dividedBy(JOINED_DEADLINE_TOLERANCE_DIVISOR));
+        var inFlightPing = inFlightIndirectPings.compute(probeTarget, (target, inFlight) ->
+                inFlight != null && !inFlight.deadline().isBefore(latestJoinedDeadline) ? inFlight : ping);
+        if (inFlightPing == ping) {
+            pingProbeTarget(probeTarget, remainingTime).whenComplete((response, throwable) -> {
+                //later requests start a new ping
+                inFlightIndirectPings.remove(probeTarget, ping);
+                if (throwable != null) {
+                    ping.response().completeExceptionally(throwable);
+                } else {
+                    ping.response().complete(response);
+                }
+            });
+        } else {
+            logger.debug("Join in-flight indirect ping of {}", probeTarget);
+        }
+        inFlightPing.response().whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                logger.error("Wasn't able to send {} to {}", request, probeTarget);
+                responseHandler.completeExceptionally(throwable);
+            } else {
+                //resend received response to the initiator of the indirect ping request
+                responseHandler.complete(response);
+            }
+        });
+    }
 
-                        //resend received response to the initiator of the indirect ping request
-                        responseHandler.complete(response);
-                    } else {
+    private CompletableFuture<NetworkResponse> pingProbeTarget(SocketAddress probeTarget, Duration timeout) {
+        CompletableFuture<NetworkResponse> ping;
+        try {
+            ping = networkClient.send(new PingRequest(memberList.getMemberStatesSnapshot()), probeTarget, timeout);
+        } catch (Exception ex) {
+            //ping that wasn't sent fails like any other, so joined requesters are answered and the target can be pinged again
+            return CompletableFuture.failedFuture(ex);
+        }
+        return ping
+                .thenApply(response -> {
+                    if (!(response instanceof AckResponse)) {
                         logger.error("Receive illegal response on indirect ping {}", response);
                         throw new IllegalStateException("Receive illegal response on indirect ping " + response);
                     }
+                    memberList.update(((AckResponse) response).memberStates());
+                    return response;
                 });
     }
+
+    /**
+     * @param deadline - time after which the ping doesn't wait for the ack of the probe target
+     */
+    private record IndirectPing(CompletableFuture<NetworkResponse> response, Instant deadline) {
+    }
 }
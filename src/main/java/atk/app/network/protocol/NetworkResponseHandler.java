@@ -2,7 +2,6 @@ package atk.app.network.protocol;
 
 import atk.app.member.MemberList;
 import atk.app.network.NetworkResponse;
-import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,13 +38,11 @@ public class NetworkResponseHandler {
     }
 
     private void processFullStateSyncResponse(FullStateSyncResponse response) {
-        var responseMap = response.memberStates().stream().collect(Collectors.toMap(k -> k.memberName, k -> k));
-        memberList.update(responseMap);
+        memberList.update(response.memberStates());
     }
 
     private void processAckResponse(AckResponse ackResponse) {
-        var remoteMembershipMap = ackResponse.memberStates().stream().collect(Collectors.toMap(k -> k.memberName, k -> k));
-        memberList.update(remoteMembershipMap);
+        memberList.update(ackResponse.memberStates());
         logger.debug("Processed {}", ackResponse);
     }
 }
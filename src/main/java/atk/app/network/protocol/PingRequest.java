@@ -2,8 +2,21 @@ package atk.app.network.protocol;
 
 import atk.app.member.MemberList;
 import atk.app.network.NetworkRequest;
+import atk.app.network.TrafficClass;
 import java.util.List;
 
-public record PingRequest(List<MemberList.MemberState> memberStates) implements NetworkRequest {
+/**
+ * @param refutation - true if the ping disseminates a refutation of the sender, it has the priority of an ack
+ */
+public record PingRequest(List<MemberList.MemberState> memberStates, boolean refutation) implements NetworkRequest {
     // TODO for udp protocol, there should be a source parameter
+
+    public PingRequest(List<MemberList.MemberState> memberStates) {
+        this(memberStates, false);
+    }
+
+    @Override
+    public TrafficClass trafficClass() {
+        return refutation ? TrafficClass.ACK : TrafficClass.PROBE;
+    }
 }
@@ -0,0 +1,66 @@
+package atk.app.runtime;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks of one member one by one on a shared executor. At most one task of a member is queued in the shared executor,
+ * and after it is done the next one is queued at the tail, so tasks of different members are interleaved
+ */
+class MemberExecutor implements Executor {
+    private static final Logger logger = LoggerFactory.getLogger(MemberExecutor.class);
+    private final String memberName;
+    private final Executor sharedExecutor;
+    private final int capacity;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    MemberExecutor(String memberName, Executor sharedExecutor, int capacity) {
+        this.memberName = memberName;
+        this.sharedExecutor = sharedExecutor;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (pendingTasks.incrementAndGet() > capacity) {
+            pendingTasks.decrementAndGet();
+            throw new RejectedExecutionException(memberName + " has more than " + capacity + " pending tasks");
+        }
+        tasks.add(task);
+        scheduleNext();
+    }
+
+    private void scheduleNext() {
+        if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                sharedExecutor.execute(this::runNext);
+            } catch (RejectedExecutionException ex) {
+                scheduled.set(false);
+                logger.warn("Shared executor rejected tasks of {}", memberName);
+            }
+        }
+    }
+
+    private void runNext() {
+        try {
+            var task = tasks.poll();
+            if (task != null) {
+                pendingTasks.decrementAndGet();
+                task.run();
+            }
+        } catch (Exception ex) {
+            logger.error("Task of {} failed", memberName, ex);
+        } finally {
+            scheduled.set(false);
+            scheduleNext();
+        }
+    }
+}
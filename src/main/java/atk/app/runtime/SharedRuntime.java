@@ -0,0 +1,87 @@
+package atk.app.runtime;
+
+import atk.app.network.TransportConfig;
+import atk.app.network.netty.NettyTransports;
+import atk.app.util.ConcurrencyUtil;
+import atk.app.util.ExceptionUtil;
+import io.netty.channel.EventLoopGroup;
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Threads shared by many members hosted in one JVM: one event loop group for all connections, one timer
+ * and one bounded worker pool. Every member gets its own {@link #newMemberExecutor(String) executor} on top of the
+ * worker pool, so a busy member can't starve the others. The client of this class is responsible for closing it
+ * after all members are closed
+ */
+public class SharedRuntime implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SharedRuntime.class);
+    private final NettyTransports transports;
+    private final EventLoopGroup eventLoopGroup;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+    private final ExecutorService lifecycleExecutor;
+    private final int memberQueueCapacity;
+
+    public SharedRuntime() {
+        this(TransportConfig.Transport.AUTO, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors(), 1024);
+    }
+
+    /**
+     * @param ioThreads           - number of event loop threads shared by all connections
+     * @param workerThreads       - number of threads that run member tasks
+     * @param memberQueueCapacity - maximum number of pending tasks of one member
+     */
+    public SharedRuntime(TransportConfig.Transport transport, int ioThreads, int workerThreads, int memberQueueCapacity) {
+        this.transports = new NettyTransports(transport);
+        this.eventLoopGroup = transports.newEventLoopGroup(ioThreads);
+        this.timer = Executors.newSingleThreadScheduledExecutor();
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        // lifecycle operations are rare, their threads are released when they are idle
+        this.lifecycleExecutor = Executors.newCachedThreadPool();
+        this.memberQueueCapacity = memberQueueCapacity;
+    }
+
+    public NettyTransports transports() {
+        return transports;
+    }
+
+    public EventLoopGroup eventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * Timer only triggers tasks. Long-running tasks should be handed over to a member executor
+     */
+    public ScheduledExecutorService timer() {
+        return timer;
+    }
+
+    public ExecutorService lifecycleExecutor() {
+        return lifecycleExecutor;
+    }
+
+    /**
+     * @return - executor that runs tasks of one member one by one on the shared worker pool. Tasks of different members
+     * are interleaved. If the member has memberQueueCapacity pending tasks a new task is rejected
+     */
+    public Executor newMemberExecutor(String memberName) {
+        return new MemberExecutor(memberName, workers, memberQueueCapacity);
+    }
+
+    @Override
+    public void close() {
+        ExceptionUtil.ignoreThrownExceptions(() -> ConcurrencyUtil.shutdownExecutor(timer), logger);
+        ExceptionUtil.ignoreThrownExceptions(() -> ConcurrencyUtil.shutdownExecutor(workers), logger);
+        ExceptionUtil.ignoreThrownExceptions(() -> eventLoopGroup.shutdownGracefully(0, 10, TimeUnit.SECONDS).get(), logger);
+        ExceptionUtil.ignoreThrownExceptions(() -> ConcurrencyUtil.shutdownExecutor(lifecycleExecutor), logger);
+    }
+}
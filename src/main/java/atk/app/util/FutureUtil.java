@@ -1,15 +1,11 @@
 package atk.app.util;
 
-import atk.app.network.NetworkResponse;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FutureUtil {
 
@@ -32,20 +28,46 @@ public class FutureUtil {
         }
     }
 
-    public static Set<CompletableFuture<NetworkResponse>> getDoneResponsesThatCompleted(List<CompletableFuture<NetworkResponse>> completableFutures,
-                                                                                        Duration completionDuration) {
-        var deadline = Instant.now().plus(completionDuration);
-        List<CompletableFuture<NetworkResponse>> internalCopy = new ArrayList<>(completableFutures);
-        while (Instant.now().isBefore(deadline)) {
-            try {
-                CompletableFuture.anyOf(internalCopy.toArray(new CompletableFuture[completableFutures.size()]))
-                        .get(completionDuration.toMillis(), TimeUnit.MILLISECONDS);
-                return internalCopy.stream().filter(CompletableFuture::isDone).collect(Collectors.toSet());
-            } catch (Exception ex) {
-                var failed = internalCopy.stream().filter(CompletableFuture::isCompletedExceptionally).collect(Collectors.toSet());
-                internalCopy.removeAll(failed);
+    /**
+     * @return - future that completes with the value of the first future that completes successfully. It completes
+     * with empty if all futures failed or none completed in the completion duration. It never completes exceptionally
+     */
+    public static <V> CompletableFuture<Optional<V>> firstSuccess(List<CompletableFuture<V>> completableFutures, Duration completionDuration) {
+        var result = new CompletableFuture<Optional<V>>();
+        if (completableFutures.isEmpty()) {
+            result.complete(Optional.empty());
+            return result;
+        }
+        var failed = new AtomicInteger();
+        completableFutures.forEach(future -> future.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                result.complete(Optional.ofNullable(value));
+            } else if (failed.incrementAndGet() == completableFutures.size()) {
+                result.complete(Optional.empty());
             }
+        }));
+        return result.completeOnTimeout(Optional.empty(), Math.max(0, completionDuration.toMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return - future that completes with the number of successfully completed futures when requiredSuccesses futures
+     * complete successfully or when all futures are completed. It never completes exceptionally
+     */
+    public static <V> CompletableFuture<Integer> awaitSuccesses(List<CompletableFuture<V>> completableFutures, int requiredSuccesses) {
+        var result = new CompletableFuture<Integer>();
+        if (completableFutures.isEmpty() || requiredSuccesses <= 0) {
+            result.complete(0);
+            return result;
         }
-        return Set.of();
+        var successes = new AtomicInteger();
+        var completed = new AtomicInteger();
+        completableFutures.forEach(future -> future.whenComplete((value, throwable) -> {
+            int currentSuccesses = throwable == null ? successes.incrementAndGet() : successes.get();
+            int currentCompleted = completed.incrementAndGet();
+            if (currentSuccesses >= requiredSuccesses || currentCompleted == completableFutures.size()) {
+                result.complete(currentSuccesses);
+            }
+        }));
+        return result;
     }
 }
@@ -0,0 +1,47 @@
+package atk.app.util;
+
+import java.time.Duration;
+
+/**
+ * Token bucket that is refilled with a constant rate up to its capacity. Thread safe class
+ */
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param tokensPerSecond - refill rate
+     * @param capacity        - maximum burst. A full bucket is created
+     */
+    public TokenBucket(long tokensPerSecond, long capacity) {
+        this.tokensPerNano = tokensPerSecond / (double) Duration.ofSeconds(1).toNanos();
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * @return - true if there were enough tokens, they are taken. Otherwise no token is taken
+     */
+    public synchronized boolean tryAcquire(long requestedTokens) {
+        refill();
+        if (tokens < requestedTokens) {
+            return false;
+        }
+        tokens -= requestedTokens;
+        return true;
+    }
+
+    public synchronized long availableTokens() {
+        refill();
+        return (long) tokens;
+    }
+
+    private void refill() {
+        var now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -9,6 +9,8 @@ abstract class AbstractChannel<T> implements Channel<T> {
 
     private final BlockingQueue<T> queue;
     private volatile boolean closed;
+    private volatile Runnable pushListener = () -> {
+    };
 
     public AbstractChannel(BlockingQueue<T> queue) {
         this.queue = queue;
@@ -45,6 +47,7 @@ abstract class AbstractChannel<T> implements Channel<T> {
             try {
                 boolean result = queue.offer(element, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
                 if (result) {
+                    pushListener.run();
                     return;
                 }
             } catch (InterruptedException ignored) {
@@ -53,6 +56,20 @@ abstract class AbstractChannel<T> implements Channel<T> {
         }
     }
 
+    @Override
+    public boolean tryPush(T element) {
+        if (closed || !queue.offer(element)) {
+            return false;
+        }
+        pushListener.run();
+        return true;
+    }
+
+    @Override
+    public void setPushListener(Runnable pushListener) {
+        this.pushListener = pushListener;
+    }
+
     @Override
     public void close() throws IOException {
         closed = true;
@@ -20,4 +20,9 @@ public interface ReadableChannel<T> extends Closeable {
      * @return - return the first element from the channel. If the channel is empty then block until there is an element to pull.
      * */
     T pull();
+
+    /**
+     * Listener is called after every successful push, so a consumer can pull elements without blocking a thread
+     */
+    void setPushListener(Runnable pushListener);
 }
@@ -9,4 +9,11 @@ public interface WriteableChannel<T> extends Closeable {
      */
     void push(T element);
 
+    /**
+     * Push an element to the channel only if there is free space. Never blocks
+     *
+     * @return - true if the element was pushed, false if the channel is full or closed
+     */
+    boolean tryPush(T element);
+
 }
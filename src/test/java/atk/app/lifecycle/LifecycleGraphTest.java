@@ -0,0 +1,87 @@
+package atk.app.lifecycle;
+
+import static atk.app.util.ConcurrencyUtil.awaitForCompletion;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+
+class LifecycleGraphTest {
+
+    @Test
+    void shouldStartDependenciesFirstAndStopThemLast() throws Exception {
+        var events = new CopyOnWriteArrayList<String>();
+        var server = new RecordingLifecycle("server", events, new CompletableFuture<>());
+        var handler = new RecordingLifecycle("handler", events, new CompletableFuture<>());
+        var timers = new RecordingLifecycle("timers", events, CompletableFuture.completedFuture(null));
+        var graph = new LifecycleGraph()
+                .add(handler)
+                .add(server, handler)
+                .add(timers);
+
+        //when handler start is in progress
+        var started = graph.start();
+        //then independent lifecycles are already started, but the server waits for the handler
+        assertThat(events).containsExactlyInAnyOrder("start handler", "start timers");
+
+        handler.result.complete(null);
+        server.result.complete(null);
+        awaitForCompletion(started);
+        assertThat(events).endsWith("start server");
+
+        //when graph is stopped, the server is stopped before the handler
+        events.clear();
+        awaitForCompletion(graph.stop());
+        assertThat(events.indexOf("stop server")).isLessThan(events.indexOf("stop handler"));
+        assertThat(events).contains("stop timers");
+    }
+
+    @Test
+    void shouldNotStartDependentsOfFailedLifecycle() {
+        var events = new CopyOnWriteArrayList<String>();
+        var handler = new RecordingLifecycle("handler", events, CompletableFuture.failedFuture(new IllegalStateException()));
+        var server = new RecordingLifecycle("server", events, CompletableFuture.completedFuture(null));
+        var graph = new LifecycleGraph()
+                .add(handler)
+                .add(server, handler);
+
+        assertThrows(ExecutionException.class, () -> awaitForCompletion(graph.start()));
+        assertThat(events).containsExactly("start handler");
+    }
+
+    @Test
+    void dependencyShouldBeAddedBeforeDependent() {
+        var events = List.<String>of();
+        var handler = new RecordingLifecycle("handler", events, CompletableFuture.completedFuture(null));
+        var server = new RecordingLifecycle("server", events, CompletableFuture.completedFuture(null));
+
+        assertThrows(IllegalArgumentException.class, () -> new LifecycleGraph().add(server, handler));
+    }
+
+    private static class RecordingLifecycle implements Lifecycle<Void> {
+        private final String name;
+        private final List<String> events;
+        private final CompletableFuture<Void> result;
+
+        private RecordingLifecycle(String name, List<String> events, CompletableFuture<Void> result) {
+            this.name = name;
+            this.events = events;
+            this.result = result;
+        }
+
+        @Override
+        public CompletableFuture<Void> start() {
+            events.add("start " + name);
+            return result;
+        }
+
+        @Override
+        public CompletableFuture<Void> stop() {
+            events.add("stop " + name);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
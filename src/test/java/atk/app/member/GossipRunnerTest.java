@@ -0,0 +1,96 @@
+package atk.app.member;
+
+import static atk.app.util.ConcurrencyUtil.awaitForCompletion;
+import static org.assertj.core.api.Assertions.assertThat;
+import atk.app.network.NetworkClient;
+import atk.app.network.protocol.GossipRequest;
+import atk.app.util.ConcurrencyUtil;
+import atk.app.util.MemberListUtil;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+class GossipRunnerTest {
+
+    @Test
+    void changedStateShouldBeGossipedALimitedNumberOfTimes() throws ExecutionException, InterruptedException, TimeoutException {
+        //given
+        var lifecycleExecutor = Executors.newCachedThreadPool();
+        var memberList = MemberListUtil.createRandomList(4);
+        var networkClient = Mockito.mock(NetworkClient.class);
+        Mockito.when(networkClient.send(Mockito.any(GossipRequest.class), Mockito.any(List.class), Mockito.any(Duration.class)))
+                .thenReturn(List.of());
+        try (GossipRunner gossipRunner = new GossipRunner(lifecycleExecutor, memberList, networkClient, Duration.ofMillis(50),
+                Duration.ofSeconds(1), 2, 32, 64 * 1024)) {
+            awaitForCompletion(gossipRunner.start());
+            //when a state is changed
+            var changedState = memberList.getLiveMemberStatesWithoutMe().get(0);
+            gossipRunner.enqueue(changedState);
+            Thread.sleep(1000);
+
+            //then the state is sent to two members for 4 * ceil(log10(4 + 1)) ticks
+            ArgumentCaptor<List> addresses = ArgumentCaptor.forClass(List.class);
+            Mockito.verify(networkClient, Mockito.times(4))
+                    .send(Mockito.eq(new GossipRequest(List.of(changedState))), addresses.capture(), Mockito.any(Duration.class));
+            addresses.getAllValues().forEach(value -> assertThat(value).hasSize(2));
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(lifecycleExecutor);
+        }
+    }
+
+    @Test
+    void gossipShouldNotExceedBandwidthCap() throws ExecutionException, InterruptedException, TimeoutException {
+        //given bandwidth that isn't enough for one message
+        var lifecycleExecutor = Executors.newCachedThreadPool();
+        var memberList = MemberListUtil.createRandomList(4);
+        var networkClient = Mockito.mock(NetworkClient.class);
+        Mockito.when(networkClient.encodedSize(Mockito.any(GossipRequest.class))).thenReturn(1000);
+        try (GossipRunner gossipRunner = new GossipRunner(lifecycleExecutor, memberList, networkClient, Duration.ofMillis(50),
+                Duration.ofSeconds(1), 2, 32, 500)) {
+            awaitForCompletion(gossipRunner.start());
+            //when a state is changed
+            gossipRunner.enqueue(memberList.getLiveMemberStatesWithoutMe().get(0));
+            Thread.sleep(500);
+
+            //then nothing is sent
+            Mockito.verify(networkClient, Mockito.never())
+                    .send(Mockito.any(GossipRequest.class), Mockito.any(List.class), Mockito.any(Duration.class));
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(lifecycleExecutor);
+        }
+    }
+
+    @Test
+    void largeBatchShouldBeTrimmedToFitBandwidthCap() throws ExecutionException, InterruptedException, TimeoutException {
+        //given bandwidth that is enough for a message with one update to two members, but not for three updates
+        var lifecycleExecutor = Executors.newCachedThreadPool();
+        var memberList = MemberListUtil.createRandomList(4);
+        var networkClient = Mockito.mock(NetworkClient.class);
+        Mockito.when(networkClient.encodedSize(Mockito.any(GossipRequest.class)))
+                .thenAnswer(invocation -> 400 * invocation.<GossipRequest>getArgument(0).memberStates().size());
+        Mockito.when(networkClient.send(Mockito.any(GossipRequest.class), Mockito.any(List.class), Mockito.any(Duration.class)))
+                .thenReturn(List.of());
+        try (GossipRunner gossipRunner = new GossipRunner(lifecycleExecutor, memberList, networkClient, Duration.ofMillis(50),
+                Duration.ofSeconds(1), 2, 32, 1000)) {
+            //when three states are changed
+            memberList.getLiveMemberStatesWithoutMe().forEach(gossipRunner::enqueue);
+            awaitForCompletion(gossipRunner.start());
+            Thread.sleep(120);
+
+            //then the first tick sends one update to both members instead of skipping the tick
+            ArgumentCaptor<GossipRequest> requests = ArgumentCaptor.forClass(GossipRequest.class);
+            ArgumentCaptor<List> addresses = ArgumentCaptor.forClass(List.class);
+            Mockito.verify(networkClient, Mockito.atLeastOnce())
+                    .send(requests.capture(), addresses.capture(), Mockito.any(Duration.class));
+            assertThat(requests.getAllValues().get(0).memberStates()).hasSize(1);
+            assertThat(addresses.getAllValues().get(0)).hasSize(2);
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(lifecycleExecutor);
+        }
+    }
+}
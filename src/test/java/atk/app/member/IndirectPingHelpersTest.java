@@ -0,0 +1,48 @@
+package atk.app.member;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import atk.app.util.MemberStateUtil;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class IndirectPingHelpersTest {
+
+    @Test
+    void helpersShouldStartFromTargetZoneAndSpreadAcrossZones() {
+        var target = memberInZone("a");
+        var members = List.of(target, memberInZone("a"), memberInZone("b"), memberInZone("b"), memberInZone("c"));
+
+        //when 3 helpers are selected
+        var helpers = new IndirectPingHelpers(new Random()).select(members, target, 3);
+
+        //then the first one is from the zone of the target and every helper is from a different zone
+        assertThat(helpers).hasSize(3).doesNotContain(target);
+        assertThat(helpers.get(0).zone).isEqualTo("a");
+        assertThat(helpers.stream().map(helper -> helper.zone)).containsExactlyInAnyOrder("a", "b", "c");
+    }
+
+    @Test
+    void helpersWithoutZonesShouldBeRandom() {
+        var target = MemberStateUtil.aliveMember();
+        var members = List.of(target, MemberStateUtil.aliveMember(), MemberStateUtil.aliveMember(), MemberStateUtil.aliveMember());
+        var indirectPingHelpers = new IndirectPingHelpers(new Random());
+
+        //when one helper is selected many times
+        var selected = new HashSet<MemberList.MemberState>();
+        for (int i = 0; i < 100; i++) {
+            selected.addAll(indirectPingHelpers.select(members, target, 1));
+        }
+
+        //then every member except the target helps
+        assertThat(selected).containsExactlyInAnyOrderElementsOf(members.subList(1, members.size()));
+    }
+
+    private static MemberList.MemberState memberInZone(String zone) {
+        return new MemberList.MemberState(MemberStateUtil.randomMemberName(), new InetSocketAddress(0), 0,
+                MemberList.MemberStateType.ALIVE, Instant.now(), zone);
+    }
+}
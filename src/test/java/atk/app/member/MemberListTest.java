@@ -5,8 +5,20 @@ import static atk.app.util.MemberStateUtil.copyAndChangeState;
 import static atk.app.util.MemberStateUtil.deadMember;
 import static atk.app.util.MemberStateUtil.updateIncarnationNumber;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -60,6 +72,34 @@ class MemberListTest {
         assertThat(memberList.getMemberStates()).containsExactlyInAnyOrder(me, deadMember);
     }
 
+    @Test
+    void cantMarkMemberAsDeadWithOldIncarnation() {
+        //given an alive member that refuted a suspicion
+        var aliveMember = updateIncarnationNumber(aliveMember(), 2);
+        memberList.update(Map.of(aliveMember.memberName, aliveMember));
+
+        //when the member is marked as dead in the old incarnation
+        var staleDeadMember = updateIncarnationNumber(copyAndChangeState(aliveMember, MemberList.MemberStateType.DEAD), 1);
+        memberList.update(Map.of(aliveMember.memberName, staleDeadMember));
+
+        //then current member is expected to be alive
+        assertThat(memberList.getMemberStates()).containsExactlyInAnyOrder(me, aliveMember);
+    }
+
+    @Test
+    void cantMarkMemberAsLeftWithOldIncarnation() {
+        //given an alive member that rejoined with a newer incarnation
+        var aliveMember = updateIncarnationNumber(aliveMember(), 2);
+        memberList.update(Map.of(aliveMember.memberName, aliveMember));
+
+        //when an old left state of the member is gossiped
+        var staleLeftMember = updateIncarnationNumber(copyAndChangeState(aliveMember, MemberList.MemberStateType.LEFT), 1);
+        memberList.update(Map.of(aliveMember.memberName, staleLeftMember));
+
+        //then current member is expected to be alive
+        assertThat(memberList.getMemberStates()).containsExactlyInAnyOrder(me, aliveMember);
+    }
+
     @Test
     void suspectAnAliveMember() {
         //given an alive member
@@ -115,4 +155,279 @@ class MemberListTest {
         //then member should be in dead state
         assertThat(memberList.getMemberStates()).containsExactlyInAnyOrder(me, deadMember);
     }
+
+    @Test
+    void deadMemberShouldBeExcludedFromProbing() {
+        //given an alive and a dead member
+        var aliveMember = aliveMember();
+        memberList.update(Map.of(aliveMember.memberName, aliveMember));
+        var deadMember = deadMember();
+        memberList.update(Map.of(deadMember.memberName, deadMember));
+
+        //then only alive member is probed
+        for (int i = 0; i < 10; i++) {
+            assertThat(memberList.nextMemberToPing()).isEqualTo(aliveMember);
+        }
+        assertThat(memberList.getLiveMemberStatesWithoutMe()).containsExactly(aliveMember);
+
+        //when alive member dies
+        var killedMember = copyAndChangeState(aliveMember, MemberList.MemberStateType.DEAD);
+        memberList.update(Map.of(killedMember.memberName, killedMember));
+
+        //then there is nobody to probe
+        assertThat(memberList.nextMemberToPing()).isNull();
+    }
+
+    @Test
+    void deadMemberShouldBeForgottenAfterRetention() throws InterruptedException {
+        var retention = Duration.ofMillis(200);
+        memberList = new MemberList(me, retention);
+        //given a dead member
+        var deadMember = deadMember();
+        memberList.update(Map.of(deadMember.memberName, deadMember));
+        assertThat(memberList.getMemberStates()).containsExactlyInAnyOrder(me, deadMember);
+
+        //when retention expires
+        Thread.sleep(retention.multipliedBy(2).toMillis());
+
+        //then the dead member is forgotten
+        assertThat(memberList.getMemberStates()).containsExactly(me);
+    }
+
+    @Test
+    void deadMemberCanRejoinOnlyWithNewerIncarnation() {
+        //given a dead member
+        var deadMember = deadMember();
+        memberList.update(Map.of(deadMember.memberName, deadMember));
+
+        //when member rejoins with a newer incarnation
+        var rejoinedMember = updateIncarnationNumber(copyAndChangeState(deadMember, MemberList.MemberStateType.ALIVE), deadMember.incarnation + 1);
+        memberList.update(Map.of(rejoinedMember.memberName, rejoinedMember));
+
+        //then member is alive and probed again
+        assertThat(memberList.getMemberStates()).containsExactlyInAnyOrder(me, rejoinedMember);
+        assertThat(memberList.nextMemberToPing()).isEqualTo(rejoinedMember);
+    }
+
+    @Test
+    void memberShouldRefuteSuspicionAboutItself() {
+        var refutation = new AtomicReference<MemberList.MemberState>();
+        memberList.setSelfRefutationListener(refutation::set);
+
+        //when somebody suspects me
+        var suspectedMe = me.tryToSuspectMember();
+        memberList.update(Map.of(me.memberName, suspectedMe));
+
+        //then I'm alive with a bigger incarnation and the refutation is disseminated
+        var myState = memberList.getMyState();
+        assertThat(myState.isAlive()).isTrue();
+        assertThat(myState.incarnation).isEqualTo(suspectedMe.incarnation + 1);
+        assertThat(refutation.get()).isEqualTo(myState);
+        assertThat(memberList.getMemberStates()).containsExactly(myState);
+
+        //when somebody thinks that I'm dead in the old incarnation
+        refutation.set(null);
+        memberList.update(Map.of(me.memberName, copyAndChangeState(me, MemberList.MemberStateType.DEAD)));
+
+        //then the stale state is ignored
+        assertThat(memberList.getMyState()).isEqualTo(myState);
+        assertThat(refutation.get()).isNull();
+
+        //when somebody thinks that I'm dead in the current incarnation
+        memberList.update(Map.of(me.memberName, copyAndChangeState(myState, MemberList.MemberStateType.DEAD)));
+
+        //then I'm alive with a bigger incarnation
+        assertThat(memberList.getMyState().isAlive()).isTrue();
+        assertThat(memberList.getMyState().incarnation).isEqualTo(myState.incarnation + 1);
+    }
+
+    @Test
+    void snapshotShouldBeReusedUntilMemberStatesChange() throws Exception {
+        //given a snapshot of the current member states
+        var snapshot = memberList.getMemberStatesSnapshot();
+        var version = memberList.getVersion();
+
+        //then it's reused while nothing changes
+        assertThat(memberList.getMemberStatesSnapshot()).isSameAs(snapshot);
+
+        //when a new member is observed
+        var aliveMember = new MemberList.MemberState(new MemberName("zoned"), new InetSocketAddress("127.0.0.1", 9000), 3,
+                MemberList.MemberStateType.ALIVE, Instant.now(), "zone-a");
+        memberList.update(Map.of(aliveMember.memberName, aliveMember));
+
+        //then a new snapshot with a bigger version contains it
+        assertThat(memberList.getVersion()).isGreaterThan(version);
+        var newSnapshot = memberList.getMemberStatesSnapshot();
+        assertThat(newSnapshot).isNotSameAs(snapshot).containsExactlyInAnyOrder(me, aliveMember);
+
+        //when the snapshot is serialized and deserialized
+        var deserialized = serializeAndDeserialize(newSnapshot);
+
+        //then it has the same member states
+        assertThat(deserialized).containsExactlyElementsOf(newSnapshot);
+        var deserializedMember = deserialized.stream().filter(memberState -> memberState.memberName.equals(aliveMember.memberName))
+                .findFirst().orElseThrow();
+        assertThat(deserializedMember.updated).isEqualTo(aliveMember.updated);
+        assertThat(deserializedMember.zone).isEqualTo("zone-a");
+        assertThat(deserializedMember.bindAddress).isEqualTo(aliveMember.bindAddress);
+    }
+
+    @Test
+    void receivedSnapshotShouldApplyOnlyChangedEntries() throws Exception {
+        //given a remote member list that knows me and two other members
+        var knownMember = aliveMember();
+        var newMember = aliveMember();
+        memberList.update(List.of(knownMember));
+        var remoteList = new MemberList(knownMember);
+        remoteList.update(List.of(me, newMember));
+        var received = serializeAndDeserialize(remoteList.getMemberStatesSnapshot());
+
+        //when only entries that change my view are decoded
+        var decoded = new ArrayList<MemberList.MemberState>();
+        received.forEach(id -> null, (memberName, incarnation, stateType) -> memberName.equals(newMember.memberName), decoded::add);
+
+        //then only the new member is materialized
+        assertThat(decoded).containsExactly(newMember);
+
+        //when the received snapshot is applied
+        var version = memberList.getVersion();
+        memberList.update(received);
+
+        //then only the new member is added
+        assertThat(memberList.getMemberStates()).containsExactlyInAnyOrder(me, knownMember, newMember);
+        assertThat(memberList.getVersion()).isEqualTo(version + 1);
+    }
+
+    @Test
+    void membersThatDidNotChangeRecentlyShouldBeSentAsReferences() throws Exception {
+        //given a remote member list that observes a change of a member
+        var recentChangeWindow = Duration.ofMillis(200);
+        var stableMember = new MemberList.MemberState(new MemberName("stable-member-with-a-long-host-name"),
+                new InetSocketAddress("127.0.0.1", 9000), 1, MemberList.MemberStateType.ALIVE, Instant.now());
+        var remoteMe = aliveMember();
+        var remoteList = new MemberList(remoteMe, MemberList.DEFAULT_TOMBSTONE_RETENTION, ProbeTargetSelector.roundRobin(),
+                recentChangeWindow, Duration.ofMinutes(1));
+        remoteList.update(List.of(stableMember));
+
+        //then the member is sent with its name while the change is recent
+        assertThat(definitionsOf(remoteList.getMemberStatesSnapshot())).containsExactlyInAnyOrder(remoteMe, stableMember);
+
+        //when the change gets older than the window of the remote member list, whatever time the member reported
+        Thread.sleep(recentChangeWindow.multipliedBy(2).toMillis());
+        var snapshot = remoteList.getMemberStatesSnapshot();
+
+        //then the stable member is sent as a reference, which is smaller than its full definition
+        assertThat(definitionsOf(snapshot)).containsExactly(remoteMe);
+        assertThat(serialize(snapshot).length).isLessThan(serialize(snapshot.withFullDefinitions()).length);
+
+        //then the received snapshot can't be read as a list, references are never silently dropped
+        var received = serializeAndDeserialize(snapshot);
+        assertThatThrownBy(received::size).isInstanceOf(IllegalStateException.class);
+
+        //when a member that knows an older incarnation of the stable member receives the reference
+        memberList.update(List.of(new MemberList.MemberState(stableMember.memberName, stableMember.bindAddress, 0,
+                MemberList.MemberStateType.ALIVE, Instant.now())));
+        memberList.update(serializeAndDeserialize(snapshot));
+
+        //then it resolves the reference and applies the newer incarnation
+        var localStableMember = memberList.getMemberStates().stream()
+                .filter(memberState -> memberState.memberName.equals(stableMember.memberName)).findFirst().orElseThrow();
+        assertThat(localStableMember.incarnation).isEqualTo(1);
+        assertThat(localStableMember.bindAddress).isEqualTo(stableMember.bindAddress);
+
+        //when a member that doesn't know the stable member receives the reference
+        var otherList = new MemberList(aliveMember());
+        otherList.update(serializeAndDeserialize(snapshot));
+
+        //then it learns only about members sent with their names
+        assertThat(otherList.getMemberStateWithoutMe()).containsExactly(remoteMe);
+    }
+
+    @Test
+    void everyMemberShouldBeSentWithItsNameOnceInFullDefinitionsInterval() throws Exception {
+        //given a remote member list that sends every member except itself as a reference
+        var fullDefinitionsInterval = Duration.ofMillis(200);
+        var remoteMe = aliveMember();
+        var remoteList = new MemberList(remoteMe, MemberList.DEFAULT_TOMBSTONE_RETENTION, ProbeTargetSelector.roundRobin(),
+                Duration.ZERO, fullDefinitionsInterval);
+        var knownMember = aliveMember();
+        remoteList.update(List.of(knownMember));
+        assertThat(definitionsOf(remoteList.getMemberStatesSnapshot())).containsExactly(remoteMe);
+
+        //when the full definitions interval passes
+        Thread.sleep(fullDefinitionsInterval.multipliedBy(2).toMillis());
+
+        //then the next snapshot defines every member and the one after it uses references again
+        assertThat(definitionsOf(remoteList.getMemberStatesSnapshot())).containsExactlyInAnyOrder(remoteMe, knownMember);
+        assertThat(definitionsOf(remoteList.getMemberStatesSnapshot())).containsExactly(remoteMe);
+    }
+
+    @Test
+    void receivedAddressShouldDeserializeOnlySocketAddresses() throws Exception {
+        //given snapshots of members with addresses that aren't inet socket addresses
+        var plainAddress = new MemberList.MemberState(new MemberName("plain"), new TestAddress(null), 0,
+                MemberList.MemberStateType.ALIVE, Instant.now());
+        var carryingAddress = new MemberList.MemberState(new MemberName("carrying"), new TestAddress(new ArrayList<>(List.of(1))), 0,
+                MemberList.MemberStateType.ALIVE, Instant.now());
+
+        //then a socket address is decoded
+        var received = serializeAndDeserialize(new MemberStatesSnapshot(List.of(plainAddress), 1, null));
+        assertThat(received).containsExactly(plainAddress);
+
+        //then an address that carries other classes is rejected
+        var rejected = serializeAndDeserialize(new MemberStatesSnapshot(List.of(carryingAddress), 1, null));
+        assertThatThrownBy(rejected::size).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void stateThatDoesNotFitItsLengthPrefixShouldNotBeEncoded() {
+        //given a member with a serialized address larger than an entry can hold
+        var hugeAddress = new MemberList.MemberState(new MemberName("huge"), new TestAddress(new byte[70_000]), 0,
+                MemberList.MemberStateType.ALIVE, Instant.now());
+
+        //then its snapshot can't be serialized
+        assertThatThrownBy(() -> serialize(new MemberStatesSnapshot(List.of(hugeAddress), 1, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * @return - members of a received snapshot that are sent with their names and addresses
+     */
+    private static List<MemberList.MemberState> definitionsOf(MemberStatesSnapshot snapshot) throws Exception {
+        var definitions = new ArrayList<MemberList.MemberState>();
+        serializeAndDeserialize(snapshot).forEach(id -> null, (memberName, incarnation, stateType) -> true, definitions::add);
+        return definitions;
+    }
+
+    private static byte[] serialize(MemberStatesSnapshot snapshot) throws Exception {
+        var buffer = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(buffer)) {
+            out.writeObject(snapshot);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static MemberStatesSnapshot serializeAndDeserialize(MemberStatesSnapshot snapshot) throws Exception {
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(serialize(snapshot)))) {
+            return (MemberStatesSnapshot) in.readObject();
+        }
+    }
+
+    private static class TestAddress extends SocketAddress {
+        private final Object payload;
+
+        TestAddress(Object payload) {
+            this.payload = payload;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TestAddress other && Objects.equals(payload, other.payload);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(payload);
+        }
+    }
 }
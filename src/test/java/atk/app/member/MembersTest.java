@@ -152,4 +152,24 @@ class MembersTest {
         }
     }
 
+    @Test
+    void memberShouldBeRemovedImmediatelyWhenItLeaves() throws ExecutionException, InterruptedException, TimeoutException {
+        try (TestMember m1 = memberTestUtil.createMember("m1");
+             TestMember m2 = memberTestUtil.createMember("m2");
+             TestMember m3 = memberTestUtil.createMember("m3")) {
+            awaitForCompletion(m1.member().start());
+            awaitForCompletion(m2.member().start());
+            awaitForCompletion(m3.member().start());
+
+            //when m1 and m3 join m2
+            awaitForCompletion(m1.member().joinToMember(m2.config().bindAddress));
+            awaitForCompletion(m3.member().joinToMember(m2.config().bindAddress));
+            //when m2 leaves
+            awaitForCompletion(m2.member().leave());
+
+            //then m1 and m3 know that m2 left without suspecting it
+            assertTrue(getMemberWithName(m1.member().getMemberList(), new MemberName("m2")).stateType.isLeft());
+            assertTrue(getMemberWithName(m3.member().getMemberList(), new MemberName("m2")).stateType.isLeft());
+        }
+    }
 }
@@ -0,0 +1,70 @@
+package atk.app.member;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class NetworkCoordinatesTest {
+
+    @Test
+    void coordinatesShouldConvergeToMeasuredRtts() {
+        var names = List.of(new MemberName("a"), new MemberName("b"), new MemberName("c"));
+        // a and b are in one zone, c is far from both
+        long[][] rttMillis = {
+                {0, 2, 50},
+                {2, 0, 50},
+                {50, 50, 0}};
+        var coordinates = names.stream().map(NetworkCoordinates::new).toList();
+
+        //when members ping each other and exchange coordinates in acks
+        for (int round = 0; round < 200; round++) {
+            for (int from = 0; from < names.size(); from++) {
+                for (int to = 0; to < names.size(); to++) {
+                    if (from != to) {
+                        coordinates.get(from).update(names.get(to), coordinates.get(to).getMyCoordinate(),
+                                Duration.ofMillis(rttMillis[from][to]));
+                    }
+                }
+            }
+        }
+
+        //then estimated rtts are close to the measured ones
+        var a = coordinates.get(0);
+        assertThat(a.estimateRtt(names.get(0), names.get(2)).orElseThrow().toMillis()).isBetween(40L, 60L);
+        assertThat(a.estimateRtt(names.get(1), names.get(2)).orElseThrow().toMillis()).isBetween(40L, 60L);
+        assertThat(a.estimateRtt(names.get(0), names.get(1)).orElseThrow().toMillis()).isLessThan(10L);
+    }
+
+    @Test
+    void membersShouldBeSortedByProximity() {
+        var a = new NetworkCoordinates(new MemberName("a"));
+        var near = new NetworkCoordinates(new MemberName("near"));
+        var far = new NetworkCoordinates(new MemberName("far"));
+        for (int i = 0; i < 100; i++) {
+            a.update(new MemberName("near"), near.getMyCoordinate(), Duration.ofMillis(1));
+            near.update(new MemberName("a"), a.getMyCoordinate(), Duration.ofMillis(1));
+            a.update(new MemberName("far"), far.getMyCoordinate(), Duration.ofMillis(80));
+            far.update(new MemberName("a"), a.getMyCoordinate(), Duration.ofMillis(80));
+        }
+        var unknown = memberState("unknown");
+
+        //when members are sorted
+        var sorted = a.sortByProximity(List.of(unknown, memberState("far"), memberState("near")));
+
+        //then the nearest is the first and a member without coordinate is the last
+        assertThat(sorted.stream().map(memberState -> memberState.memberName.name()))
+                .containsExactly("near", "far", "unknown");
+    }
+
+    @Test
+    void rttShouldNotBeEstimatedForUnknownMember() {
+        var a = new NetworkCoordinates(new MemberName("a"));
+
+        assertThat(a.estimateRtt(new MemberName("a"), new MemberName("b"))).isEmpty();
+    }
+
+    private static MemberList.MemberState memberState(String name) {
+        return new MemberList.MemberState(new MemberName(name), null, 0, MemberList.MemberStateType.ALIVE);
+    }
+}
@@ -0,0 +1,59 @@
+package atk.app.member;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+class PhiAccrualSuspicionPolicyTest {
+    private final MemberName member = new MemberName("m1");
+
+    @Test
+    void memberShouldBeSuspectedOnlyWhenAckIsLateComparedToItsHistory() {
+        var policy = SuspicionPolicy.phiAccrual(8, 100, Duration.ofMillis(100), Duration.ZERO);
+        var start = Instant.now();
+        //given a member acks every second with jitter
+        var ackTime = start;
+        for (int i = 0; i < 20; i++) {
+            ackTime = ackTime.plus(Duration.ofMillis(i % 2 == 0 ? 800 : 1200));
+            policy.onAck(member, ackTime);
+        }
+
+        //then a probe that fails soon after the last ack doesn't suspect the member
+        assertThat(policy.shouldSuspect(member, ackTime.plus(Duration.ofMillis(1000)))).isFalse();
+        //and the suspicion level grows with silence until the member is suspected
+        var level = policy.suspicionLevel(member, ackTime.plus(Duration.ofMillis(1500)));
+        assertThat(level).isGreaterThan(policy.suspicionLevel(member, ackTime.plus(Duration.ofMillis(1000))));
+        assertThat(policy.shouldSuspect(member, ackTime.plus(Duration.ofSeconds(5)))).isTrue();
+    }
+
+    @Test
+    void memberWithoutHistoryShouldBeSuspectedLikeWithBinaryPolicy() {
+        var policy = SuspicionPolicy.phiAccrual(8, 100, Duration.ofMillis(100), Duration.ZERO);
+
+        assertThat(policy.shouldSuspect(member, Instant.now())).isTrue();
+        assertThat(policy.suspicionLevel(member, Instant.now())).isZero();
+        policy.onAck(member, Instant.now());
+        assertThat(policy.shouldSuspect(member, Instant.now())).isTrue();
+        assertThat(policy.suspicionLevel(member, Instant.now())).isZero();
+    }
+
+    @Test
+    void historyOfRemovedMemberShouldBeForgotten() {
+        var policy = SuspicionPolicy.phiAccrual(8, 100, Duration.ofMillis(100), Duration.ZERO);
+        //given a member with a regular history
+        var ackTime = Instant.now();
+        for (int i = 0; i < 5; i++) {
+            ackTime = ackTime.plus(Duration.ofSeconds(1));
+            policy.onAck(member, ackTime);
+        }
+        assertThat(policy.shouldSuspect(member, ackTime.plus(Duration.ofMillis(500)))).isFalse();
+
+        //when the member is dead
+        policy.onRemoved(member);
+
+        //then nothing is known about it
+        assertThat(policy.suspicionLevel(member, ackTime.plus(Duration.ofMillis(500)))).isZero();
+        assertThat(policy.shouldSuspect(member, ackTime.plus(Duration.ofMillis(500)))).isTrue();
+    }
+}
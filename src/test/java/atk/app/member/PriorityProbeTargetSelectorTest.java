@@ -0,0 +1,73 @@
+package atk.app.member;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import atk.app.util.MemberStateUtil;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PriorityProbeTargetSelectorTest {
+
+    @Test
+    void suspectedMemberShouldBeProbedAgainWithinBudget() {
+        var members = new ArrayList<>(List.of(MemberStateUtil.aliveMember(), MemberStateUtil.aliveMember(), MemberStateUtil.aliveMember()));
+        var selector = new PriorityProbeTargetSelector(members, 1);
+        //given a round of regular probes is started
+        var probes = new ArrayList<MemberList.MemberState>();
+        probes.add(selector.nextMember());
+
+        //when a member becomes suspected
+        var previous = members.get(2);
+        var suspected = previous.tryToSuspectMember();
+        members.set(2, suspected);
+        selector.onMemberStateChanged(previous, suspected);
+        for (int i = 0; i < 3; i++) {
+            probes.add(selector.nextMember());
+        }
+
+        //then it's probed right after the current probe and the round still covers all members
+        assertThat(probes.get(1)).isEqualTo(suspected);
+        assertThat(probes).containsAll(members);
+    }
+
+    @Test
+    void extraProbesShouldBeInterleavedWithRegularOnes() {
+        var members = new ArrayList<>(List.of(MemberStateUtil.aliveMember(), MemberStateUtil.aliveMember()));
+        var selector = new PriorityProbeTargetSelector(members, 5);
+        selector.nextMember();
+
+        //when two members join at once
+        var joined = List.of(MemberStateUtil.aliveMember(), MemberStateUtil.aliveMember());
+        joined.forEach(member -> {
+            members.add(member);
+            selector.onMemberStateChanged(null, member);
+        });
+        var probes = new ArrayList<MemberList.MemberState>();
+        for (int i = 0; i < 3; i++) {
+            probes.add(selector.nextMember());
+        }
+
+        //then they are probed out of turn, but a regular probe is between them
+        assertThat(probes.get(0)).isEqualTo(joined.get(0));
+        assertThat(probes.get(2)).isEqualTo(joined.get(1));
+    }
+
+    @Test
+    void selectorWithoutBudgetShouldBeRoundRobin() {
+        var members = new ArrayList<>(List.of(MemberStateUtil.aliveMember(), MemberStateUtil.aliveMember(), MemberStateUtil.aliveMember()));
+        var selector = new PriorityProbeTargetSelector(members, 0);
+
+        //when a member is suspected
+        var previous = members.get(0);
+        var suspected = previous.tryToSuspectMember();
+        members.set(0, suspected);
+        selector.onMemberStateChanged(previous, suspected);
+        var probes = new ArrayList<MemberList.MemberState>();
+        for (int i = 0; i < 3; i++) {
+            probes.add(selector.nextMember());
+        }
+
+        //then every member is probed once in a round
+        assertThat(probes).containsExactlyInAnyOrderElementsOf(members);
+    }
+}
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -34,6 +35,8 @@ class ProbeRunnerTest {
         //given any network request should fail
         Mockito.when(networkClient.send(Mockito.any(NetworkRequest.class), Mockito.any(SocketAddress.class), Mockito.any(Duration.class)))
                 .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Wasn't able to contact member")));
+        Mockito.when(networkClient.sendTimed(Mockito.any(NetworkRequest.class), Mockito.any(SocketAddress.class), Mockito.any(Duration.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Wasn't able to contact member")));
         var probePeriod = Duration.ofSeconds(2);
         try (ProbeRunner probeRunner = new ProbeRunner(responseHandler, networkClient, memberList, suspectTimers,
                 lifecycleExecutor, probePeriod, Duration.ofSeconds(1), 2)) {
@@ -57,8 +60,8 @@ class ProbeRunnerTest {
         var networkClient = Mockito.mock(NetworkClient.class);
         var suspectTimers = Mockito.mock(SuspectTimers.class);
         //given ping request fails
-        Mockito.when(networkClient.send(Mockito.any(PingRequest.class), Mockito.any(SocketAddress.class), Mockito.any(Duration.class)))
-                .thenReturn(failedResponse());
+        Mockito.when(networkClient.sendTimed(Mockito.any(PingRequest.class), Mockito.any(SocketAddress.class), Mockito.any(Duration.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Wasn't able to contact member")));
         //given all indirect request fails expect the last one
         Mockito.when(networkClient.send(Mockito.any(IndirectPingRequest.class), Mockito.any(List.class), Mockito.any(Duration.class)))
                 .thenReturn(List.of(failedResponse(), CompletableFuture.supplyAsync(() -> new AckResponse(memberList.getMemberStates()))));
@@ -77,6 +80,35 @@ class ProbeRunnerTest {
         }
     }
 
+    @Test
+    void probeShouldNotBlockProbeExecutorWhileItWaitsForAck() throws Exception {
+        //given
+        var lifecycleExecutor = Executors.newCachedThreadPool();
+        var timer = Executors.newSingleThreadScheduledExecutor();
+        var memberExecutor = Executors.newSingleThreadExecutor();
+        var memberList = MemberListUtil.createRandomList(4);
+        var networkClient = Mockito.mock(NetworkClient.class);
+        //given the probe target never answers
+        Mockito.when(networkClient.sendTimed(Mockito.any(PingRequest.class), Mockito.any(SocketAddress.class), Mockito.any(Duration.class)))
+                .thenReturn(new CompletableFuture<>());
+        try (ProbeRunner probeRunner = new ProbeRunner(responseHandler, networkClient, memberList, suspectTimers,
+                lifecycleExecutor, timer, memberExecutor, Duration.ofSeconds(2), Duration.ofSeconds(1), 2,
+                new ProbeTimeouts(Duration.ofSeconds(1), Duration.ofSeconds(1)))) {
+            //when probe runner is started
+            awaitForCompletion(probeRunner.start());
+            Thread.sleep(200);
+
+            //then the probe executor is free to run other tasks while the probe waits for the ack
+            var otherTask = CompletableFuture.runAsync(() -> {
+            }, memberExecutor);
+            otherTask.get(500, TimeUnit.MILLISECONDS);
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(memberExecutor);
+            ConcurrencyUtil.shutdownExecutor(timer);
+            ConcurrencyUtil.shutdownExecutor(lifecycleExecutor);
+        }
+    }
+
     private CompletableFuture<NetworkResponse> failedResponse() {
         return CompletableFuture.failedFuture(new IllegalStateException("Wasn't able to contact member"));
     }
@@ -0,0 +1,56 @@
+package atk.app.member;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Offset.offset;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class ProbeTimeoutsTest {
+    private final MemberName near = new MemberName("near");
+    private final MemberName far = new MemberName("far");
+
+    @Test
+    void timeoutShouldFollowRttOfEveryTarget() {
+        var probeTimeouts = new ProbeTimeouts(Duration.ofMillis(5), Duration.ofSeconds(1));
+
+        //when targets answer with stable rtts
+        for (int i = 0; i < 50; i++) {
+            probeTimeouts.onRtt(near, Duration.ofMillis(1));
+            probeTimeouts.onRtt(far, Duration.ofMillis(100));
+        }
+
+        //then the near target gets the minimum timeout and the far one a timeout a bit above its rtt
+        assertThat(probeTimeouts.timeoutOf(near)).isEqualTo(Duration.ofMillis(5));
+        assertThat(probeTimeouts.timeoutOf(far)).isBetween(Duration.ofMillis(100), Duration.ofMillis(150));
+    }
+
+    @Test
+    void targetWithoutSamplesShouldGetMaximumTimeout() {
+        var probeTimeouts = new ProbeTimeouts(Duration.ofMillis(5), Duration.ofSeconds(1));
+
+        assertThat(probeTimeouts.timeoutOf(near)).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void timeoutShouldBackOffAfterMissedPingUntilNextRtt() {
+        var probeTimeouts = new ProbeTimeouts(Duration.ofMillis(5), Duration.ofSeconds(1));
+        for (int i = 0; i < 50; i++) {
+            probeTimeouts.onRtt(far, Duration.ofMillis(100));
+        }
+        var timeout = probeTimeouts.timeoutOf(far);
+
+        //when pings are missed
+        probeTimeouts.onTimeout(far);
+        //then timeout doubles
+        assertThat(probeTimeouts.timeoutOf(far).toMillis()).isCloseTo(timeout.multipliedBy(2).toMillis(), offset(1L));
+        //and it's bounded by the maximum timeout
+        for (int i = 0; i < 10; i++) {
+            probeTimeouts.onTimeout(far);
+        }
+        assertThat(probeTimeouts.timeoutOf(far)).isEqualTo(Duration.ofSeconds(1));
+
+        //when the target answers again then backoff is reset
+        probeTimeouts.onRtt(far, Duration.ofMillis(100));
+        assertThat(probeTimeouts.timeoutOf(far)).isLessThan(Duration.ofMillis(200));
+    }
+}
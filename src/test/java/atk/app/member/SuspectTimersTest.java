@@ -4,10 +4,14 @@ import static atk.app.util.ConcurrencyUtil.awaitForCompletion;
 import static org.assertj.core.api.Assertions.assertThat;
 import atk.app.util.ConcurrencyUtil;
 import atk.app.util.MemberListUtil;
+import atk.app.util.MemberStateUtil;
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
 import org.junit.jupiter.api.Test;
 
@@ -53,6 +57,37 @@ class SuspectTimersTest {
         }
     }
 
+    @Test
+    void refutationLearnedFromMemberListShouldStopTheTimer() throws Exception {
+        var executorService = Executors.newCachedThreadPool();
+        var memberList = MemberListUtil.createRandomList(2);
+        try (var suspectTimers = new SuspectTimers(executorService, memberList, Duration.ofMillis(800))) {
+            awaitForCompletion(suspectTimers.start());
+            memberList.setStateChangeListener(suspectTimers::onMemberStateChanged);
+            var targetMember = memberList.getMemberStateWithoutMe().get(0);
+
+            //given a suspected member
+            suspectTimers.suspectMember(targetMember.memberName);
+            memberList.suspectMember(targetMember.memberName);
+
+            //when the member refutes the suspicion with a newer incarnation, learned from gossip
+            Thread.sleep(400);
+            var refuted = MemberStateUtil.updateIncarnationNumber(targetMember, targetMember.incarnation + 1);
+            memberList.update(Map.of(refuted.memberName, refuted));
+            //and it's suspected again
+            suspectTimers.suspectMember(targetMember.memberName);
+            memberList.suspectMember(targetMember.memberName);
+
+            //then it isn't dead at the deadline of the first suspicion, but at the deadline of the second one
+            Thread.sleep(600);
+            assertThat(memberList.getMemberStateWithoutMe().get(0).isSuspected()).isTrue();
+            Thread.sleep(1000);
+            assertThat(memberList.getMemberStateWithoutMe().get(0).isDead()).isTrue();
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(executorService);
+        }
+    }
+
     @Test
     void memberShouldBeMarkedAsDeadIfItIsRevivedAfterTimeoutIsExceeded() throws InterruptedException, IOException, ExecutionException, TimeoutException {
         var executorService = Executors.newCachedThreadPool();
@@ -78,5 +113,31 @@ class SuspectTimersTest {
         }
     }
 
+    @Test
+    void memberShouldBeMarkedAsDeadIfMemberExecutorRejectsTheDeadline() throws Exception {
+        var executorService = Executors.newCachedThreadPool();
+        var timer = Executors.newSingleThreadScheduledExecutor();
+        var memberList = MemberListUtil.createRandomList(2);
+        //given a member executor that rejects every task
+        Executor memberExecutor = command -> {
+            throw new RejectedExecutionException("Member executor is saturated");
+        };
+        try (var suspectTimers = new SuspectTimers(executorService, timer, memberExecutor, memberList, Duration.ofMillis(500))) {
+            awaitForCompletion(suspectTimers.start());
+            var targetMember = memberList.getMemberStateWithoutMe().get(0);
 
+            //when suspect member
+            suspectTimers.suspectMember(targetMember.memberName);
+            memberList.suspectMember(targetMember.memberName);
+
+            //then the member is marked as dead anyway and it can be suspected again
+            Thread.sleep(1000);
+            assertThat(memberList.getMemberStateWithoutMe().get(0).isDead()).isTrue();
+            suspectTimers.suspectMember(targetMember.memberName);
+            suspectTimers.unSuspectMember(targetMember.memberName);
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(timer);
+            ConcurrencyUtil.shutdownExecutor(executorService);
+        }
+    }
 }
@@ -0,0 +1,5 @@
+package atk.app.network;
+
+public record MockChunkedResponse(int index, boolean lastChunk) implements ChunkedResponse {
+
+}
@@ -0,0 +1,62 @@
+package atk.app.network.netty;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import atk.app.network.TrafficClass;
+import atk.app.util.ConcurrencyUtil;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class EgressSchedulerTest {
+
+    @Test
+    void acksShouldBeSentBeforeQueuedBulkTraffic() throws Exception {
+        var executor = Executors.newCachedThreadPool();
+        try {
+            //given a budget that is used by a bulk message
+            var scheduler = new EgressScheduler(1000, 10_000, executor);
+            assertThat(scheduler.acquire(TrafficClass.BULK, 1000)).isCompleted();
+
+            //when a bulk message and then an ack wait for the budget
+            var bulk = scheduler.acquire(TrafficClass.BULK, 500);
+            var ack = scheduler.acquire(TrafficClass.ACK, 500);
+            assertThat(scheduler.stats(TrafficClass.BULK).queuedBytes()).isEqualTo(500);
+
+            //then the ack gets the budget first
+            ack.get(2, TimeUnit.SECONDS);
+            assertThat(bulk).isNotDone();
+            bulk.get(2, TimeUnit.SECONDS);
+            assertThat(scheduler.stats(TrafficClass.BULK)).isEqualTo(new EgressScheduler.Stats(0, 1500, 0));
+            assertThat(scheduler.stats(TrafficClass.ACK)).isEqualTo(new EgressScheduler.Stats(0, 500, 0));
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(executor);
+        }
+    }
+
+    @Test
+    void messageShouldBeDroppedIfQueueOfItsClassIsFull() throws Exception {
+        var executor = Executors.newCachedThreadPool();
+        try {
+            //given an empty budget and a queued bulk message
+            var scheduler = new EgressScheduler(1000, 600, executor);
+            scheduler.acquire(TrafficClass.BULK, 1000);
+            var queued = scheduler.acquire(TrafficClass.BULK, 500);
+
+            //when another bulk message doesn't fit into the queue
+            var dropped = scheduler.acquire(TrafficClass.BULK, 500);
+
+            //then it's dropped, but probe traffic is still queued
+            var exception = assertThrows(ExecutionException.class, dropped::get);
+            assertThat(exception.getCause()).isInstanceOf(RejectedExecutionException.class);
+            var probe = scheduler.acquire(TrafficClass.PROBE, 500);
+            assertThat(scheduler.stats(TrafficClass.BULK).droppedBytes()).isEqualTo(500);
+            probe.get(2, TimeUnit.SECONDS);
+            queued.get(2, TimeUnit.SECONDS);
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(executor);
+        }
+    }
+}
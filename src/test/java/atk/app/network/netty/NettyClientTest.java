@@ -0,0 +1,109 @@
+package atk.app.network.netty;
+
+import static atk.app.util.ConcurrencyUtil.awaitForCompletion;
+import static atk.app.util.NettyTestUtil.newClient;
+import static atk.app.util.NettyTestUtil.newServer;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import atk.app.network.MockRequest;
+import atk.app.network.MockResponse;
+import atk.app.network.TcpRequest;
+import atk.app.network.TransportConfig;
+import atk.app.util.channel.BoundedChannel;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+
+class NettyClientTest {
+
+    @Test
+    void requestsShouldFailFastWhileCircuitIsOpenAndRecoverInBackground() throws Exception {
+        int port = 8783;
+        var serverSocketAddress = new InetSocketAddress("127.0.0.1", port);
+        var executorService = Executors.newCachedThreadPool();
+        var transportConfig = TransportConfig.builder()
+                .serverWorkerThreads(1)
+                .circuitBreakerFailures(2)
+                .circuitBreakerOpenDuration(Duration.ofMillis(500))
+                .build();
+        var client = newClient(executorService, transportConfig);
+
+        //when connects to an address without a server fail twice
+        for (int i = 0; i < 2; i++) {
+            assertThrows(ExecutionException.class, () -> awaitForCompletion(client.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(1))));
+        }
+        //then the next request fails without a connect
+        var failure = assertThrows(ExecutionException.class, () -> awaitForCompletion(client.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(1))));
+        assertThat(failure.getCause()).isInstanceOf(ConnectException.class).hasMessageContaining("Circuit is open");
+
+        //when the server is started
+        var channel = new BoundedChannel<TcpRequest>(10);
+        try (NettyServer server = newServer(port, channel, executorService, transportConfig)) {
+            awaitForCompletion(server.start());
+            Executors.newSingleThreadExecutor().submit(() -> channel.pull(Duration.ofMinutes(1)).getResponseHandler().complete(new MockResponse()));
+            //then background connect closes the circuit
+            Thread.sleep(1500);
+            assertEquals(new MockResponse(), awaitForCompletion(client.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(1))));
+        }
+    }
+
+    @Test
+    void cancelledRequestShouldCloseItsConnectionAndCarryItsDeadline() throws Exception {
+        int port = 8785;
+        var channel = new BoundedChannel<TcpRequest>(10);
+        var serverSocketAddress = new InetSocketAddress("127.0.0.1", port);
+        var executorService = Executors.newCachedThreadPool();
+        try (NettyServer server = newServer(port, channel, executorService)) {
+            awaitForCompletion(server.start());
+            var client = newClient(executorService);
+
+            //when a request with a two seconds timeout is received
+            var response = client.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(2));
+            var receivedRequest = channel.pull(Duration.ofSeconds(10));
+
+            //then the server knows how long the client waits
+            var remainingTime = receivedRequest.getRemainingTime(Duration.ofMinutes(1));
+            assertThat(remainingTime).isLessThanOrEqualTo(Duration.ofSeconds(2)).isGreaterThan(Duration.ofSeconds(1));
+
+            //when the client cancels the request
+            response.cancel(false);
+            Thread.sleep(500);
+
+            //then the connection is closed and the server doesn't wait for the response
+            assertThat(receivedRequest.getResponseHandler()).isCancelled();
+            assertThat(receivedRequest.isAbandoned()).isTrue();
+        }
+    }
+
+    @Test
+    void roundTripTimeShouldBeMeasuredFromWriteToResponse() throws Exception {
+        int port = 8787;
+        var channel = new BoundedChannel<TcpRequest>(10);
+        var serverSocketAddress = new InetSocketAddress("127.0.0.1", port);
+        var executorService = Executors.newCachedThreadPool();
+        try (NettyServer server = newServer(port, channel, executorService)) {
+            awaitForCompletion(server.start());
+            //given a server that answers 300 milliseconds after it receives a request
+            var response = new MockResponse();
+            executorService.submit(() -> {
+                var receivedRequest = channel.pull(Duration.ofMinutes(1));
+                Thread.sleep(300);
+                return receivedRequest.getResponseHandler().complete(response);
+            });
+
+            //when a client sends a timed request
+            var start = System.nanoTime();
+            var timedResponse = awaitForCompletion(newClient(executorService)
+                    .sendTimed(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10)));
+            var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            //then the round trip includes the answer of the server, but not the connect and the start of the connection
+            assertEquals(response, timedResponse.response());
+            assertThat(timedResponse.roundTripTime()).isGreaterThanOrEqualTo(Duration.ofMillis(300)).isLessThan(elapsed);
+        }
+    }
+}
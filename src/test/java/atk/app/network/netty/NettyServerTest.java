@@ -1,14 +1,31 @@
 package atk.app.network.netty;
 
 import static atk.app.util.ConcurrencyUtil.awaitForCompletion;
+import static atk.app.util.NettyTestUtil.newClient;
+import static atk.app.util.NettyTestUtil.newServer;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import atk.app.member.MemberList;
+import atk.app.network.MockChunkedResponse;
 import atk.app.network.MockRequest;
 import atk.app.network.MockResponse;
 import atk.app.network.TcpRequest;
+import atk.app.network.TransportConfig;
+import atk.app.network.protocol.FullStateSyncResponse;
+import atk.app.util.MemberStateUtil;
 import atk.app.util.channel.BoundedChannel;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.SocketChannel;
 import java.net.InetSocketAddress;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Test;
 
 class NettyServerTest {
@@ -21,7 +38,7 @@ class NettyServerTest {
         var request = new MockRequest();
         var response = new MockResponse();
         var executorService = Executors.newCachedThreadPool();
-        try (NettyServer server = new NettyServer(port, channel, executorService);
+        try (NettyServer server = newServer(port, channel, executorService);
         ) {
             awaitForCompletion(server.start());
 
@@ -34,11 +51,304 @@ class NettyServerTest {
             });
 
             // when client send a request
-            var networkResponse = awaitForCompletion(new NettyClient(executorService).send(request, serverSocketAddress, Duration.ofSeconds(10)));
+            var networkResponse = awaitForCompletion(newClient(executorService).send(request, serverSocketAddress, Duration.ofSeconds(10)));
 
             //client worker received the right response
             assertEquals(response, networkResponse);
         }
     }
 
+    @Test
+    void shouldStreamChunkedResponse() throws Exception {
+        int port = 8778;
+        var channel = new BoundedChannel<TcpRequest>(10);
+        var serverSocketAddress = new InetSocketAddress("127.0.0.1", port);
+        var executorService = Executors.newCachedThreadPool();
+        try (NettyServer server = newServer(port, channel, executorService)) {
+            awaitForCompletion(server.start());
+
+            // when server streams a response in three chunks
+            Executors.newSingleThreadExecutor().submit(() -> {
+                var receivedRequest = channel.pull(Duration.ofMinutes(1));
+                receivedRequest.sendChunk(new MockChunkedResponse(0, false))
+                        .thenCompose(unused -> receivedRequest.sendChunk(new MockChunkedResponse(1, false)))
+                        .thenRun(() -> receivedRequest.getResponseHandler().complete(new MockChunkedResponse(2, true)));
+            });
+
+            // when client send a request
+            var chunks = new CopyOnWriteArrayList<>();
+            var networkResponse = awaitForCompletion(newClient(executorService)
+                    .send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10), chunks::add, executorService));
+
+            //client consumed all chunks in order and completed with the last one
+            assertThat(chunks).containsExactly(new MockChunkedResponse(0, false), new MockChunkedResponse(1, false));
+            assertEquals(new MockChunkedResponse(2, true), networkResponse);
+        }
+    }
+
+    @Test
+    void fullStateChunksShouldBeCompressedByDefault() throws Exception {
+        int port = 8789;
+        var channel = new BoundedChannel<TcpRequest>(10);
+        var serverSocketAddress = new InetSocketAddress("127.0.0.1", port);
+        var executorService = Executors.newCachedThreadPool();
+        var memberStates = new ArrayList<MemberList.MemberState>();
+        for (int i = 0; i < 200; i++) {
+            memberStates.add(MemberStateUtil.aliveMember());
+        }
+        var chunk = new FullStateSyncResponse(memberStates, false);
+        var lastChunk = new FullStateSyncResponse(List.of(memberStates.get(0)), true);
+        try (NettyServer server = newServer(port, channel, executorService)) {
+            awaitForCompletion(server.start());
+
+            // when server streams a full state
+            Executors.newSingleThreadExecutor().submit(() -> {
+                var receivedRequest = channel.pull(Duration.ofMinutes(1));
+                receivedRequest.sendChunk(chunk)
+                        .thenRun(() -> receivedRequest.getResponseHandler().complete(lastChunk));
+            });
+            var chunks = new CopyOnWriteArrayList<>();
+            var networkResponse = awaitForCompletion(newClient(executorService)
+                    .send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10), chunks::add, executorService));
+
+            //then chunks are inflated by the client and a chunk takes less bytes than without compression
+            assertThat(chunks).containsExactly(chunk);
+            assertEquals(lastChunk, networkResponse);
+            var compressed = NettyCodecs.encode(chunk, true);
+            var uncompressed = NettyCodecs.encode(chunk);
+            try {
+                assertThat(compressed.readableBytes()).isLessThan(uncompressed.readableBytes());
+            } finally {
+                compressed.release();
+                uncompressed.release();
+            }
+        }
+    }
+
+    @Test
+    void shouldSendTheSameRequestToManyServers() throws Exception {
+        var channel1 = new BoundedChannel<TcpRequest>(10);
+        var channel2 = new BoundedChannel<TcpRequest>(10);
+        var request = new MockRequest();
+        var response = new MockResponse();
+        var executorService = Executors.newCachedThreadPool();
+        try (NettyServer server1 = newServer(8779, channel1, executorService);
+             NettyServer server2 = newServer(8780, channel2, executorService)) {
+            awaitForCompletion(server1.start());
+            awaitForCompletion(server2.start());
+
+            // when servers receive a request they respond
+            for (var channel : List.of(channel1, channel2)) {
+                Executors.newSingleThreadExecutor().submit(() -> {
+                    var receivedRequest = channel.pull(Duration.ofMinutes(1));
+                    //server worker received the right request
+                    assertEquals(request, receivedRequest.getRequest());
+                    receivedRequest.getResponseHandler().complete(response);
+                });
+            }
+
+            // when client send a request to both servers
+            var networkResponses = newClient(executorService)
+                    .send(request, List.of(new InetSocketAddress("127.0.0.1", 8779), new InetSocketAddress("127.0.0.1", 8780)), Duration.ofSeconds(10));
+
+            //client received responses from both servers
+            for (var networkResponse : networkResponses) {
+                assertEquals(response, awaitForCompletion(networkResponse));
+            }
+        }
+    }
+
+    @Test
+    void shouldServeRequestsWithManyAcceptorsAndWorkers() throws Exception {
+        int port = 8781;
+        var channel = new BoundedChannel<TcpRequest>(10);
+        var serverSocketAddress = new InetSocketAddress("127.0.0.1", port);
+        var executorService = Executors.newCachedThreadPool();
+        var transportConfig = TransportConfig.builder()
+                .serverWorkerThreads(4)
+                .serverAcceptors(2)
+                .build();
+        try (NettyServer server = newServer(port, channel, executorService, transportConfig)) {
+            awaitForCompletion(server.start());
+
+            // when server responds on every request
+            Executors.newSingleThreadExecutor().submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    channel.pull(Duration.ofMinutes(1)).getResponseHandler().complete(new MockResponse());
+                }
+            });
+
+            // then every request is served
+            var client = newClient(executorService, transportConfig);
+            for (int i = 0; i < 10; i++) {
+                assertEquals(new MockResponse(), awaitForCompletion(client.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10))));
+            }
+        }
+    }
+
+    @Test
+    void shouldRouteRequestsOfClustersSharingOnePort() throws Exception {
+        int port = 8782;
+        var channelA = new BoundedChannel<TcpRequest>(10);
+        var channelB = new BoundedChannel<TcpRequest>(10);
+        var serverSocketAddress = new InetSocketAddress("127.0.0.1", port);
+        var executorService = Executors.newCachedThreadPool();
+        try (NettyServer server = newServer(port, new BoundedChannel<>(10), executorService);
+             var clusterA = server.clusterServer("a", channelA);
+             var clusterB = server.clusterServer("b", channelB)) {
+            awaitForCompletion(server.start());
+            awaitForCompletion(clusterA.start());
+            awaitForCompletion(clusterB.start());
+
+            // every cluster answers with its own response
+            Executors.newSingleThreadExecutor().submit(() -> {
+                channelA.pull(Duration.ofMinutes(1)).getResponseHandler().complete(new MockChunkedResponse(1, true));
+                channelB.pull(Duration.ofMinutes(1)).getResponseHandler().complete(new MockChunkedResponse(2, true));
+            });
+
+            // when clients of both clusters send requests to the same port
+            var client = newClient(executorService);
+            var clientA = client.forCluster("a", new EgressScheduler(new TransportConfig(), executorService));
+            var clientB = client.forCluster("b", new EgressScheduler(new TransportConfig(), executorService));
+            var responseA = awaitForCompletion(clientA.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10)));
+            var responseB = awaitForCompletion(clientB.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10)));
+
+            // then every request was processed by its cluster
+            assertEquals(new MockChunkedResponse(1, true), responseA);
+            assertEquals(new MockChunkedResponse(2, true), responseB);
+
+            // when a client of a cluster that isn't served sends a request
+            var clientC = client.forCluster("c", new EgressScheduler(new TransportConfig(), executorService));
+            var responseC = clientC.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10));
+
+            // then the connection is closed and the request fails
+            assertThrows(ExecutionException.class, () -> awaitForCompletion(responseC));
+        }
+    }
+
+    @Test
+    void requestsOverOneConnectionShouldBeChargedOneByOne() throws Exception {
+        int port = 8796;
+        var channel = new BoundedChannel<TcpRequest>(10);
+        var executorService = Executors.newCachedThreadPool();
+        //given a server that accepts two requests per second from one host
+        var transportConfig = TransportConfig.builder()
+                .transport(TransportConfig.Transport.NIO)
+                .serverWorkerThreads(1)
+                .inboundRequestsPerSecondPerPeer(2)
+                .build();
+        var transports = new NettyTransports(transportConfig.transport);
+        var group = transports.newEventLoopGroup(1);
+        try (NettyServer server = newServer(port, channel, executorService, transportConfig)) {
+            awaitForCompletion(server.start());
+            var bootstrap = new Bootstrap().group(group)
+                    .channel(transports.socketChannelClass())
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        public void initChannel(SocketChannel ch) {
+                            NettyCodecs.addCodecs(ch.pipeline());
+                        }
+                    });
+            var connection = bootstrap.connect(new InetSocketAddress("127.0.0.1", port)).sync().channel();
+
+            // when a client pipelines three requests over one connection
+            for (int i = 0; i < 3; i++) {
+                connection.writeAndFlush(new MockRequest());
+            }
+
+            // then the third one is rejected and the connection is closed
+            assertThat(connection.closeFuture().await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(server.getThrottledPeers().values()).containsExactly(new InboundRateLimiter.ThrottleStats(1, 0));
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    @Test
+    void requestsOfPeerOverTheRequestRateShouldBeRejected() throws Exception {
+        int port = 8784;
+        var channel = new BoundedChannel<TcpRequest>(10);
+        var serverSocketAddress = new InetSocketAddress("127.0.0.1", port);
+        var executorService = Executors.newCachedThreadPool();
+        //given a server that accepts two requests per second from one host
+        var transportConfig = TransportConfig.builder()
+                .serverWorkerThreads(1)
+                .inboundRequestsPerSecondPerPeer(2)
+                .build();
+        try (NettyServer server = newServer(port, channel, executorService, transportConfig)) {
+            awaitForCompletion(server.start());
+            Executors.newSingleThreadExecutor().submit(() -> {
+                for (int i = 0; i < 2; i++) {
+                    channel.pull(Duration.ofMinutes(1)).getResponseHandler().complete(new MockResponse());
+                }
+                return null;
+            });
+
+            // when a client sends three requests at once
+            var client = newClient(executorService, transportConfig);
+            awaitForCompletion(client.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10)));
+            awaitForCompletion(client.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10)));
+            var throttled = client.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(2));
+
+            // then the third one is rejected and the host is reported as throttled
+            assertThrows(ExecutionException.class, () -> awaitForCompletion(throttled));
+            assertThat(server.getThrottledPeers().values()).containsExactly(new InboundRateLimiter.ThrottleStats(1, 0));
+        }
+    }
+
+    @Test
+    void connectionsWithoutPeerKeyShouldNotBeRateLimited() throws Exception {
+        int port = 8788;
+        var channel = new BoundedChannel<TcpRequest>(10);
+        var serverSocketAddress = new InetSocketAddress("127.0.0.1", port);
+        var executorService = Executors.newCachedThreadPool();
+        //given a server that accepts two requests per second from one peer, but doesn't identify local peers
+        TransportConfig.PeerKey peerKey = remoteAddress -> null;
+        var transportConfig = TransportConfig.builder()
+                .serverWorkerThreads(1)
+                .inboundRequestsPerSecondPerPeer(2)
+                .inboundPeerKey(peerKey)
+                .build();
+        try (NettyServer server = newServer(port, channel, executorService, transportConfig)) {
+            awaitForCompletion(server.start());
+            Executors.newSingleThreadExecutor().submit(() -> {
+                for (int i = 0; i < 3; i++) {
+                    channel.pull(Duration.ofMinutes(1)).getResponseHandler().complete(new MockResponse());
+                }
+                return null;
+            });
+
+            // when a client sends three requests at once
+            var client = newClient(executorService, transportConfig);
+            for (int i = 0; i < 3; i++) {
+                awaitForCompletion(client.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10)));
+            }
+
+            // then all of them are served
+            assertThat(server.getThrottledPeers()).isEmpty();
+        }
+    }
+
+    @Test
+    void requestShouldBeRejectedWhenRequestQueueIsFull() throws Exception {
+        int port = 8786;
+        //given a server whose request queue has space for one request that is never processed
+        var channel = new BoundedChannel<TcpRequest>(1);
+        var serverSocketAddress = new InetSocketAddress("127.0.0.1", port);
+        var executorService = Executors.newCachedThreadPool();
+        try (NettyServer server = newServer(port, channel, executorService)) {
+            awaitForCompletion(server.start());
+            var client = newClient(executorService);
+            client.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10));
+            Thread.sleep(500);
+
+            // when a client sends one more request
+            var rejected = client.send(new MockRequest(), serverSocketAddress, Duration.ofSeconds(10));
+
+            // then the request is rejected without waiting for the timeout
+            var start = System.nanoTime();
+            assertThrows(ExecutionException.class, () -> awaitForCompletion(rejected));
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package atk.app.network.netty;
 
+import static atk.app.util.NettyTestUtil.newClient;
+import static atk.app.util.NettyTestUtil.newServer;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import atk.app.network.MockRequest;
 import atk.app.network.TcpRequest;
@@ -18,11 +20,11 @@ class NettyTransportTest {
         Channel<TcpRequest> requestChannel2 = new BoundedChannel<>(10);
 
         var executorService = Executors.newCachedThreadPool();
-        try (var nettyServer = new NettyServer(11, requestChannel2, executorService);) {
+        try (var nettyServer = newServer(11, requestChannel2, executorService);) {
             nettyServer.start().get();
 
             var sendRequest = new MockRequest();
-            var sendFeature = new NettyClient(executorService)
+            var sendFeature = newClient(executorService)
                     .send(sendRequest, new InetSocketAddress(11), Duration.ofSeconds(20));
             var receivedReq = nettyServer.getReceivedRequests().pull(Duration.ofMinutes(1));
             assertEquals(sendRequest, receivedReq.getRequest());
@@ -0,0 +1,118 @@
+package atk.app.network.netty;
+
+import static atk.app.util.ConcurrencyUtil.awaitForCompletion;
+import static atk.app.util.NettyTestUtil.newServer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import atk.app.network.MockRequest;
+import atk.app.network.MockResponse;
+import atk.app.network.TcpRequest;
+import atk.app.network.TransportConfig;
+import atk.app.util.ConcurrencyUtil;
+import atk.app.util.channel.BoundedChannel;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.socket.SocketChannel;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares ping round trip time of the available transports. Pings are sent over one connection, so the time
+ * to connect isn't measured. It isn't a part of the default build, run it with -Dgroups=benchmark -DexcludedTestGroups=
+ */
+@Tag("benchmark")
+class TransportRttBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(TransportRttBenchmarkTest.class);
+    private static final int WARMUP_PINGS = 20;
+    private static final int MEASURED_PINGS = 100;
+
+    @Test
+    void comparePingRttOfAvailableTransports() throws Exception {
+        var transports = new ArrayList<>(List.of(TransportConfig.Transport.NIO));
+        if (Epoll.isAvailable()) {
+            transports.add(TransportConfig.Transport.EPOLL);
+        }
+        int port = 8790;
+        for (var transport : transports) {
+            var rtts = measurePingRtt(TransportConfig.builder().transport(transport).build(), port++);
+            logger.info("{} ping rtt: median {} us, p99 {} us", transport,
+                    rtts.get(rtts.size() / 2) / 1000, rtts.get(rtts.size() * 99 / 100) / 1000);
+        }
+    }
+
+    private List<Long> measurePingRtt(TransportConfig transportConfig, int port) throws Exception {
+        var channel = new BoundedChannel<TcpRequest>(10);
+        var executorService = Executors.newCachedThreadPool();
+        var responder = Executors.newSingleThreadExecutor();
+        var transports = new NettyTransports(transportConfig.transport);
+        var group = transports.newEventLoopGroup(1);
+        try (NettyServer server = newServer(port, channel, executorService, transportConfig)) {
+            awaitForCompletion(server.start());
+            responder.submit(() -> {
+                TcpRequest request;
+                while ((request = channel.pull(Duration.ofSeconds(5))) != null) {
+                    request.getResponseHandler().complete(new MockResponse());
+                }
+            });
+            var pingHandler = new PingHandler();
+            var bootstrap = new Bootstrap().group(group)
+                    .channel(transports.socketChannelClass())
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        public void initChannel(SocketChannel ch) {
+                            NettyCodecs.addCodecs(ch.pipeline());
+                            ch.pipeline().addLast(pingHandler);
+                        }
+                    });
+            transports.configure(bootstrap);
+            var connection = bootstrap.connect(new InetSocketAddress("127.0.0.1", port)).sync().channel();
+            var rtts = new ArrayList<Long>();
+            for (int i = 0; i < WARMUP_PINGS + MEASURED_PINGS; i++) {
+                var response = pingHandler.expectResponse();
+                var start = System.nanoTime();
+                connection.writeAndFlush(new MockRequest());
+                var message = response.get(5, TimeUnit.SECONDS);
+                if (i >= WARMUP_PINGS) {
+                    rtts.add(System.nanoTime() - start);
+                }
+                assertEquals(new MockResponse(), message);
+            }
+            connection.close().sync();
+            Collections.sort(rtts);
+            return rtts;
+        } finally {
+            group.shutdownGracefully().sync();
+            ConcurrencyUtil.shutdownExecutor(responder);
+            ConcurrencyUtil.shutdownExecutor(executorService);
+        }
+    }
+
+    /**
+     * Completes the response of the last ping, one ping is in flight at a time
+     */
+    private static class PingHandler extends ChannelInboundHandlerAdapter {
+        private volatile CompletableFuture<Object> response;
+
+        CompletableFuture<Object> expectResponse() {
+            response = new CompletableFuture<>();
+            return response;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            response.complete(msg);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package atk.app.network.protocol;
+
+import static atk.app.util.ConcurrencyUtil.awaitForCompletion;
+import static org.assertj.core.api.Assertions.assertThat;
+import atk.app.network.NetworkClient;
+import atk.app.network.NetworkResponse;
+import atk.app.network.NetworkServer;
+import atk.app.network.TcpRequest;
+import atk.app.util.ConcurrencyUtil;
+import atk.app.util.MemberListUtil;
+import atk.app.util.MemberStateUtil;
+import atk.app.util.channel.BoundedChannel;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class NetworkRequestHandlerTest {
+
+    @Test
+    void concurrentIndirectPingsOfTheSameTargetShouldShareOnePing() throws Exception {
+        //given
+        var lifecycleExecutor = Executors.newCachedThreadPool();
+        var memberExecutor = Executors.newSingleThreadExecutor();
+        var memberList = MemberListUtil.createRandomList(3);
+        var receivedRequests = new BoundedChannel<TcpRequest>(10);
+        NetworkServer<Void> networkServer = Mockito.mock(NetworkServer.class);
+        Mockito.when(networkServer.getReceivedRequests()).thenReturn(receivedRequests);
+        var networkClient = Mockito.mock(NetworkClient.class);
+        var ping = new CompletableFuture<NetworkResponse>();
+        Mockito.when(networkClient.send(Mockito.any(PingRequest.class), Mockito.any(SocketAddress.class), Mockito.any(Duration.class)))
+                .thenReturn(ping);
+        var probeTarget = new InetSocketAddress("127.0.0.1", 9000);
+        try (var requestHandler = new NetworkRequestHandler(lifecycleExecutor, memberList, networkServer, networkClient,
+                Duration.ofSeconds(1), 256, memberExecutor)) {
+            awaitForCompletion(requestHandler.start());
+
+            //when two members ask to probe the same target before it answers
+            var first = new TcpRequest(new IndirectPingRequest(List.of(), probeTarget));
+            var second = new TcpRequest(new IndirectPingRequest(List.of(), probeTarget));
+            receivedRequests.push(first);
+            receivedRequests.push(second);
+            Thread.sleep(200);
+            var ack = new AckResponse(List.of());
+            ping.complete(ack);
+
+            //then only one ping is sent and both members receive the ack
+            Mockito.verify(networkClient, Mockito.times(1))
+                    .send(Mockito.any(PingRequest.class), Mockito.eq(probeTarget), Mockito.any(Duration.class));
+            assertThat(first.getResponseHandler()).isCompletedWithValue(ack);
+            assertThat(second.getResponseHandler()).isCompletedWithValue(ack);
+
+            //when the target is probed again after the ping is completed
+            receivedRequests.push(new TcpRequest(new IndirectPingRequest(List.of(), probeTarget)));
+            Thread.sleep(200);
+
+            //then a new ping is sent
+            Mockito.verify(networkClient, Mockito.times(2))
+                    .send(Mockito.any(PingRequest.class), Mockito.eq(probeTarget), Mockito.any(Duration.class));
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(memberExecutor);
+            ConcurrencyUtil.shutdownExecutor(lifecycleExecutor);
+        }
+    }
+
+    @Test
+    void indirectPingShouldNotBeJoinedByRequesterWithMuchLaterDeadline() throws Exception {
+        //given
+        var lifecycleExecutor = Executors.newCachedThreadPool();
+        var memberExecutor = Executors.newSingleThreadExecutor();
+        var memberList = MemberListUtil.createRandomList(3);
+        var receivedRequests = new BoundedChannel<TcpRequest>(10);
+        NetworkServer<Void> networkServer = Mockito.mock(NetworkServer.class);
+        Mockito.when(networkServer.getReceivedRequests()).thenReturn(receivedRequests);
+        var networkClient = Mockito.mock(NetworkClient.class);
+        Mockito.when(networkClient.send(Mockito.any(PingRequest.class), Mockito.any(SocketAddress.class), Mockito.any(Duration.class)))
+                .thenReturn(new CompletableFuture<>());
+        var probeTarget = new InetSocketAddress("127.0.0.1", 9000);
+        try (var requestHandler = new NetworkRequestHandler(lifecycleExecutor, memberList, networkServer, networkClient,
+                Duration.ofSeconds(1), 256, memberExecutor)) {
+            awaitForCompletion(requestHandler.start());
+
+            //when a member that has little time left asks first and a member that has the whole timeout asks next
+            receivedRequests.push(new TcpRequest(new IndirectPingRequest(List.of(), probeTarget), chunk -> null,
+                    Instant.now().plusMillis(300)));
+            receivedRequests.push(new TcpRequest(new IndirectPingRequest(List.of(), probeTarget)));
+            Thread.sleep(200);
+
+            //then the second member doesn't wait for the shorter ping and the target is pinged for it again
+            Mockito.verify(networkClient, Mockito.times(2))
+                    .send(Mockito.any(PingRequest.class), Mockito.eq(probeTarget), Mockito.any(Duration.class));
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(memberExecutor);
+            ConcurrencyUtil.shutdownExecutor(lifecycleExecutor);
+        }
+    }
+
+    @Test
+    void indirectPingThatWasNotSentShouldFailAndLetTheTargetBePingedAgain() throws Exception {
+        //given
+        var lifecycleExecutor = Executors.newCachedThreadPool();
+        var memberExecutor = Executors.newSingleThreadExecutor();
+        var memberList = MemberListUtil.createRandomList(3);
+        var receivedRequests = new BoundedChannel<TcpRequest>(10);
+        NetworkServer<Void> networkServer = Mockito.mock(NetworkServer.class);
+        Mockito.when(networkServer.getReceivedRequests()).thenReturn(receivedRequests);
+        var networkClient = Mockito.mock(NetworkClient.class);
+        var ack = new AckResponse(List.of());
+        Mockito.when(networkClient.send(Mockito.any(PingRequest.class), Mockito.any(SocketAddress.class), Mockito.any(Duration.class)))
+                .thenThrow(new IllegalStateException("Client is closed"))
+                .thenReturn(CompletableFuture.completedFuture(ack));
+        var probeTarget = new InetSocketAddress("127.0.0.1", 9000);
+        try (var requestHandler = new NetworkRequestHandler(lifecycleExecutor, memberList, networkServer, networkClient,
+                Duration.ofSeconds(1), 256, memberExecutor)) {
+            awaitForCompletion(requestHandler.start());
+
+            //when the client throws instead of sending the ping
+            var first = new TcpRequest(new IndirectPingRequest(List.of(), probeTarget));
+            receivedRequests.push(first);
+            Thread.sleep(200);
+
+            //then the requester receives the failure
+            assertThat(first.getResponseHandler()).isCompletedExceptionally();
+
+            //when the target is probed again
+            var second = new TcpRequest(new IndirectPingRequest(List.of(), probeTarget));
+            receivedRequests.push(second);
+            Thread.sleep(200);
+
+            //then a new ping is sent
+            assertThat(second.getResponseHandler()).isCompletedWithValue(ack);
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(memberExecutor);
+            ConcurrencyUtil.shutdownExecutor(lifecycleExecutor);
+        }
+    }
+
+    @Test
+    void ackOfProbeTargetShouldBeAppliedToMemberList() throws Exception {
+        //given
+        var lifecycleExecutor = Executors.newCachedThreadPool();
+        var memberExecutor = Executors.newSingleThreadExecutor();
+        var memberList = MemberListUtil.createRandomList(3);
+        var receivedRequests = new BoundedChannel<TcpRequest>(10);
+        NetworkServer<Void> networkServer = Mockito.mock(NetworkServer.class);
+        Mockito.when(networkServer.getReceivedRequests()).thenReturn(receivedRequests);
+        var networkClient = Mockito.mock(NetworkClient.class);
+        var ping = new CompletableFuture<NetworkResponse>();
+        Mockito.when(networkClient.send(Mockito.any(PingRequest.class), Mockito.any(SocketAddress.class), Mockito.any(Duration.class)))
+                .thenReturn(ping);
+        var probeTarget = new InetSocketAddress("127.0.0.1", 9000);
+        try (var requestHandler = new NetworkRequestHandler(lifecycleExecutor, memberList, networkServer, networkClient,
+                Duration.ofSeconds(1), 256, memberExecutor)) {
+            awaitForCompletion(requestHandler.start());
+
+            //when the probe target acks with a member that isn't known yet
+            var request = new TcpRequest(new IndirectPingRequest(List.of(), probeTarget));
+            receivedRequests.push(request);
+            Thread.sleep(200);
+            var newMember = MemberStateUtil.aliveMember();
+            ping.complete(new AckResponse(List.of(newMember)));
+
+            //then the member learned from the ack is added to the member list
+            assertThat(request.getResponseHandler()).isCompleted();
+            assertThat(memberList.getMemberStates()).contains(newMember);
+        } finally {
+            ConcurrencyUtil.shutdownExecutor(memberExecutor);
+            ConcurrencyUtil.shutdownExecutor(lifecycleExecutor);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package atk.app.runtime;
+
+import static atk.app.util.ConcurrencyUtil.awaitForCompletion;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import atk.app.network.TransportConfig;
+import atk.app.util.MemberTestUtil;
+import atk.app.util.MemberTestUtil.TestMember;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class SharedRuntimeTest {
+
+    @Test
+    void membersOfOneRuntimeShouldConverge() throws Exception {
+        var probePeriod = Duration.ofSeconds(2);
+        var networkRequestTimeout = Duration.ofSeconds(1);
+        try (SharedRuntime runtime = new SharedRuntime(TransportConfig.Transport.AUTO, 2, 2, 1024);
+             MemberTestUtil memberTestUtil = new MemberTestUtil()) {
+            try (TestMember m1 = memberTestUtil.createMember("m1", runtime, probePeriod, networkRequestTimeout);
+                 TestMember m2 = memberTestUtil.createMember("m2", runtime, probePeriod, networkRequestTimeout);
+                 TestMember m3 = memberTestUtil.createMember("m3", runtime, probePeriod, networkRequestTimeout)) {
+                awaitForCompletion(m1.member().start());
+                awaitForCompletion(m2.member().start());
+                awaitForCompletion(m3.member().start());
+
+                //when m1 and m3 join m2
+                awaitForCompletion(m1.member().joinToMember(m2.config().bindAddress));
+                awaitForCompletion(m3.member().joinToMember(m2.config().bindAddress));
+                //wait member list to converge
+                Thread.sleep(probePeriod.multipliedBy(3).toMillis());
+
+                //then all members have the same member lists
+                assertThat(m1.member().getMemberList()).hasSize(3)
+                        .containsExactlyInAnyOrderElementsOf(m2.member().getMemberList())
+                        .containsExactlyInAnyOrderElementsOf(m3.member().getMemberList());
+            }
+        }
+    }
+
+    @Test
+    void memberExecutorShouldInterleaveTasksOfDifferentMembers() throws InterruptedException {
+        var sharedExecutor = Executors.newSingleThreadExecutor();
+        try {
+            var executedTasks = Collections.synchronizedList(new ArrayList<String>());
+            var blocker = new CountDownLatch(1);
+            var m1 = new MemberExecutor("m1", sharedExecutor, 10);
+            var m2 = new MemberExecutor("m2", sharedExecutor, 10);
+            //given the shared thread is busy
+            sharedExecutor.execute(() -> awaitLatch(blocker));
+
+            //when m1 submits many tasks before m2
+            for (int i = 0; i < 3; i++) {
+                m1.execute(() -> executedTasks.add("m1"));
+            }
+            for (int i = 0; i < 3; i++) {
+                m2.execute(() -> executedTasks.add("m2"));
+            }
+            blocker.countDown();
+            Thread.sleep(500);
+
+            //then tasks of m2 don't wait for all tasks of m1
+            assertThat(executedTasks).containsExactly("m1", "m2", "m1", "m2", "m1", "m2");
+        } finally {
+            sharedExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void memberExecutorShouldRejectTasksOverCapacity() {
+        var sharedExecutor = Executors.newSingleThreadExecutor();
+        try {
+            var blocker = new CountDownLatch(1);
+            var memberExecutor = new MemberExecutor("m1", sharedExecutor, 2);
+            //given the shared thread is busy and the member has 2 pending tasks
+            sharedExecutor.execute(() -> awaitLatch(blocker));
+            memberExecutor.execute(() -> {
+            });
+            memberExecutor.execute(() -> {
+            });
+
+            //then the next task is rejected
+            assertThrows(RejectedExecutionException.class, () -> memberExecutor.execute(() -> {
+            }));
+            blocker.countDown();
+        } finally {
+            sharedExecutor.shutdownNow();
+        }
+    }
+
+    private static void awaitLatch(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -3,8 +3,11 @@ package atk.app.util;
 import atk.app.member.Config;
 import atk.app.member.Member;
 import atk.app.member.MemberName;
+import atk.app.network.TransportConfig;
+import atk.app.network.netty.EgressScheduler;
 import atk.app.network.netty.NettyClient;
 import atk.app.network.netty.NettyServer;
+import atk.app.runtime.SharedRuntime;
 import atk.app.util.channel.BoundedChannel;
 import java.io.Closeable;
 import java.io.IOException;
@@ -42,13 +45,34 @@ public class MemberTestUtil implements Closeable {
                 suspectMemberDeadline,
                 networkRequestTimeout,
                 2);
-        var server = new NettyServer(nextPort, new BoundedChannel<>(10), executor);
-        var client = new NettyClient(executor);
+        var transportConfig = new TransportConfig();
+        // client and server of a member share its egress budget
+        var egressScheduler = new EgressScheduler(transportConfig, executor);
+        var client = new NettyClient(executor, transportConfig, egressScheduler);
+        var server = new NettyServer(nextPort, new BoundedChannel<>(10), executor, transportConfig, egressScheduler);
         nextPort++;
         closeables.add(server);
         return new TestMember(config, new Member(config, executor, server, client));
     }
 
+    /**
+     * Member that runs on the shared runtime. No thread safe method
+     */
+    public TestMember createMember(String name, SharedRuntime runtime, Duration probePeriod, Duration networkRequestTimeout) {
+        var config = new Config(new MemberName(name), new InetSocketAddress("0.0.0.0", nextPort),
+                probePeriod,
+                Duration.ofSeconds(10),
+                networkRequestTimeout,
+                2);
+        var transportConfig = new TransportConfig();
+        var egressScheduler = new EgressScheduler(transportConfig, runtime.lifecycleExecutor());
+        var server = new NettyServer(nextPort, new BoundedChannel<>(10), runtime, transportConfig, egressScheduler);
+        var client = new NettyClient(runtime, transportConfig, egressScheduler);
+        nextPort++;
+        closeables.add(server);
+        return new TestMember(config, new Member(config, runtime, server, client));
+    }
+
     @Override
     public void close() {
         closeables.forEach(e -> {
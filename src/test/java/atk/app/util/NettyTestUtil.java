@@ -0,0 +1,31 @@
+package atk.app.util;
+
+import atk.app.network.TcpRequest;
+import atk.app.network.TransportConfig;
+import atk.app.network.netty.EgressScheduler;
+import atk.app.network.netty.NettyClient;
+import atk.app.network.netty.NettyServer;
+import atk.app.util.channel.Channel;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Servers and clients of tests act as different members, so every one of them has its own egress budget
+ */
+public class NettyTestUtil {
+
+    public static NettyServer newServer(int port, Channel<TcpRequest> channel, ExecutorService executor) {
+        return newServer(port, channel, executor, new TransportConfig());
+    }
+
+    public static NettyServer newServer(int port, Channel<TcpRequest> channel, ExecutorService executor, TransportConfig transportConfig) {
+        return new NettyServer(port, channel, executor, transportConfig, new EgressScheduler(transportConfig, executor));
+    }
+
+    public static NettyClient newClient(ExecutorService executor) {
+        return newClient(executor, new TransportConfig());
+    }
+
+    public static NettyClient newClient(ExecutorService executor, TransportConfig transportConfig) {
+        return new NettyClient(executor, transportConfig, new EgressScheduler(transportConfig, executor));
+    }
+}